@@ -0,0 +1,116 @@
+package kirmanak.TextSearcher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic log tree used by the benchmarks. The content is deterministic for the same parameters.
+ */
+class Corpus {
+    static final String EXTENSION = "log";
+    static final String NEEDLE = "FATAL disk quota exceeded";
+    private static final int FILES_PER_DIRECTORY = 100;
+    private static final String[] WORDS = {
+            "INFO", "DEBUG", "WARN", "request", "served", "in", "ms", "user", "session", "opened", "closed",
+            "cache", "miss", "hit", "connection", "pool", "timeout", "retry", "GET", "POST", "/api/v1/items",
+    };
+
+    private final Path root;
+    private final List<Path> files;
+
+    /**
+     * Generates the corpus in a new temporary directory
+     *
+     * @param fileCount    the number of files with the extension
+     * @param fileSize     the approximate size of every file in bytes
+     * @param matchDensity the share of files containing the needle, from 0 to 1
+     * @param encoding     the charset to write the files in
+     * @throws IOException if the corpus could not be written
+     */
+    Corpus(final int fileCount, final int fileSize, final double matchDensity, final String encoding)
+            throws IOException {
+        final Charset charset = Charset.forName(encoding);
+        final Random random = new Random(fileCount * 31L + fileSize);
+        root = Files.createTempDirectory("textsearcher-bench");
+        files = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            final Path directory = root.resolve("dir" + i / FILES_PER_DIRECTORY);
+            Files.createDirectories(directory);
+            final Path file = directory.resolve("file" + i + "." + EXTENSION);
+            Files.write(file, content(random, fileSize, random.nextDouble() < matchDensity).getBytes(charset));
+            files.add(file);
+            // files with other extensions make the walk do some filtering
+            if (i % 10 == 0) {
+                Files.write(directory.resolve("file" + i + ".txt"), new byte[]{1, 2, 3});
+            }
+        }
+    }
+
+    /**
+     * Generates log-like lines
+     *
+     * @param random   the source of words
+     * @param size     the approximate content length
+     * @param matching whether the needle should appear in the middle of the content
+     * @return the content
+     */
+    private static String content(final Random random, final int size, final boolean matching) {
+        final StringBuilder builder = new StringBuilder(size + 128);
+        boolean inserted = !matching;
+        while (builder.length() < size) {
+            builder.append("2018-09-01 12:00:00 ");
+            final int words = 4 + random.nextInt(8);
+            for (int i = 0; i < words; i++) {
+                builder.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            if (!inserted && builder.length() >= size / 2) {
+                builder.append(NEEDLE);
+                inserted = true;
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    List<Path> getFiles() {
+        return files;
+    }
+
+    /**
+     * Removes the corpus from the disk
+     */
+    void delete() {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                        throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir, final IOException exc)
+                        throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (final IOException err) {
+            throw new UncheckedIOException(err);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package kirmanak.TextSearcher;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The per-file match: the byte scanner against the original Files.lines() approach,
+ * and a single pass looking for fifty literals at once.
+ * The queries are compiled for every {@link TextEncoding} and the scanner detects the encoding of the corpus,
+ * as it does in a search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+    private static final int PATTERN_COUNT = 50;
+    @Param({"1000"})
+    public int fileCount;
+    @Param({"4096", "1048576"})
+    public int fileSize;
+    @Param({"0.0", "0.1"})
+    public double matchDensity;
+    @Param({"UTF-8", "UTF-16LE"})
+    public String encoding;
+
+    private Corpus corpus;
+    private FileScanner scanner;
+    private FileScanner multiScanner;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = new Corpus(fileCount, fileSize, matchDensity, encoding);
+        scanner = new FileScanner(new EncodedQuery(QueryMode.TEXT, Corpus.NEEDLE, false, false), () -> false, false);
+        final List<String> literals = new ArrayList<>();
+        literals.add(Corpus.NEEDLE);
+        for (int i = 1; i < PATTERN_COUNT; i++) {
+            literals.add(String.format("ERROR code %04d", i));
+        }
+        multiScanner = new FileScanner(new EncodedQuery(QueryMode.ANY, String.join("\n", literals), false, false),
+                () -> false, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public void byteScanner(final Blackhole blackhole) throws IOException {
+        for (final Path file : corpus.getFiles()) {
+            blackhole.consume(scanner.contains(file));
+        }
+    }
+
+    @Benchmark
+    public void multiPatternScanner(final Blackhole blackhole) throws IOException {
+        for (final Path file : corpus.getFiles()) {
+            blackhole.consume(multiScanner.contains(file));
+        }
+    }
+
+    @Benchmark
+    public void linesBaseline(final Blackhole blackhole) throws IOException {
+        final Charset charset = Charset.forName(encoding);
+        for (final Path file : corpus.getFiles()) {
+            try (final Stream<String> lines = Files.lines(file, charset)) {
+                blackhole.consume(lines.anyMatch(line -> line.contains(Corpus.NEEDLE)));
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package kirmanak.TextSearcher;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the result tree. Only paths are needed, so no corpus is written to the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TreeBenchmark {
+    @Param({"10000", "100000", "500000"})
+    public int fileCount;
+    @Param({"100", "10000"})
+    public int filesPerDirectory;
+
+    private Path root;
+    private SearchRequest request;
+    private List<FileMatches> files;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        root = Paths.get("/var/log");
+        request = new SearchRequest(root, "log", "needle", QueryMode.TEXT, false, false, false, false, ScanMode.POOL,
+                1, PathFilter.NONE);
+        files = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            files.add(new FileMatches(root.resolve("app" + i / filesPerDirectory).resolve("file" + i + ".log"), 1));
+        }
+    }
+
+    @Benchmark
+    public Object treeBuilder() {
+        final TreeBuilder builder = new TreeBuilder(root, request);
+        files.forEach(builder::add);
+        return builder.getTreeRoot();
+    }
+}
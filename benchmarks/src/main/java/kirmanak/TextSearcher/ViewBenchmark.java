@@ -0,0 +1,56 @@
+package kirmanak.TextSearcher;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a single file in the viewer and reading a screen of lines from its middle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ViewBenchmark {
+    private static final int SCREEN_LINES = 50;
+
+    @Param({"1048576", "67108864"})
+    public int fileSize;
+    @Param({"UTF-8"})
+    public String encoding;
+
+    private Corpus corpus;
+    private LineIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = new Corpus(1, fileSize, 1, encoding);
+        index = indexLines();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public LineIndex indexLines() throws IOException {
+        final LineIndex result = new LineIndex(new MappedFile(corpus.getFiles().get(0)));
+        result.build(() -> false);
+        return result;
+    }
+
+    @Benchmark
+    public int readScreen() {
+        final LinePages pages = new LinePages(index);
+        final int first = index.getLineCount() / 2;
+        int length = 0;
+        for (int line = first; line < first + SCREEN_LINES && line < index.getLineCount(); line++) {
+            length += pages.line(line).length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,51 @@
+package kirmanak.TextSearcher;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The directory walk: the sequential FileFinder against the parallel FileCrawler
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WalkBenchmark {
+    @Param({"10000"})
+    public int fileCount;
+
+    private Corpus corpus;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        corpus = new Corpus(fileCount, 64, 0, "UTF-8");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        corpus.delete();
+    }
+
+    @Benchmark
+    public void fileFinder(final Blackhole blackhole) throws IOException {
+        final FileFinder fileFinder = new FileFinder(Corpus.EXTENSION);
+        Files.walkFileTree(corpus.getRoot(), fileFinder);
+        blackhole.consume(fileFinder.getPaths().size());
+    }
+
+    @Benchmark
+    public void fileCrawler(final Blackhole blackhole) throws InterruptedException, ExecutionException {
+        final LongAdder counter = new LongAdder();
+        new FileCrawler(Corpus.EXTENSION, (path, attributes) -> counter.increment(), () -> false)
+                .crawl(corpus.getRoot()).get();
+        blackhole.consume(counter.sum());
+    }
+}
@@ -0,0 +1,250 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Aho-Corasick automaton looking for many literals in a single pass over the raw bytes.
+ * The automaton is compiled into a complete transition table, bytes which do not occur in any literal
+ * share one column of the table, so its size depends on the literals rather than on the alphabet.
+ * The table holds the row offsets of the next states, negated for the states where a literal ends,
+ * so the scanning loop needs a single lookup per byte.
+ * A case insensitive automaton puts the bytes the case variants have at the same position into one class,
+ * see {@link CaseFolding}. Such classes may accept mixed sequences which are not variants of any literal,
+ * so unless all literals are ASCII a match is decoded and compared with the literals ignoring the case.
+ */
+@Log4j2
+@Getter
+class AhoCorasickMatcher implements QueryMatcher {
+    private final List<String> literals;
+    private final Charset charset;
+    private final boolean ignoreCase;
+    private final boolean verified;
+    private final List<byte[]> patterns;
+    private final int[] classes = new int[256];
+    private final int classCount;
+    private final int[] transitions;
+    private final int[] matchLengths;
+    private final int maxLength;
+
+    AhoCorasickMatcher(final List<String> literals, final Charset charset) {
+        this(literals, charset, false);
+    }
+
+    AhoCorasickMatcher(final List<String> literals, final Charset charset, final boolean ignoreCase) {
+        final EntryMessage m = log.traceEntry(
+                "AhoCorasickMatcher(literals = {}, charset = {}, ignoreCase = {})", literals, charset, ignoreCase
+        );
+        this.literals = literals;
+        this.charset = charset;
+        this.ignoreCase = ignoreCase;
+        this.verified = ignoreCase && literals.stream().anyMatch(literal -> literal.chars().anyMatch(c -> c >= 0x80));
+        this.patterns = literals.stream().map(literal -> literal.getBytes(charset)).collect(Collectors.toList());
+        final int[] representatives = representatives();
+        int nextClass = 1;
+        int stateLimit = 1;
+        int longest = 0;
+        for (final byte[] pattern : patterns) {
+            for (final byte b : pattern) {
+                final int representative = representatives[b & 0xFF];
+                if (classes[representative] == 0) {
+                    classes[representative] = nextClass++;
+                }
+            }
+            stateLimit += pattern.length;
+            longest = Math.max(longest, pattern.length);
+        }
+        for (int value = 0; value < classes.length; value++) {
+            classes[value] = classes[representatives[value]];
+        }
+        this.classCount = nextClass;
+        this.maxLength = longest;
+        final int[] trie = new int[stateLimit * classCount];
+        final int[] lengths = new int[stateLimit];
+        final int stateCount = buildTrie(trie, lengths);
+        this.transitions = Arrays.copyOf(trie, stateCount * classCount);
+        this.matchLengths = Arrays.copyOf(lengths, stateCount);
+        link();
+        encode();
+        log.traceExit(m);
+    }
+
+    /**
+     * Groups the bytes the case variants of the literals share positions with, every group is represented
+     * by one of its bytes. Each byte represents itself if the case is not ignored.
+     *
+     * @return the representative of every byte
+     */
+    private int[] representatives() {
+        final int[] result = new int[256];
+        for (int value = 0; value < result.length; value++) {
+            result[value] = value;
+        }
+        if (!ignoreCase) {
+            return result;
+        }
+        for (final String literal : literals) {
+            final CaseFolding folding = new CaseFolding(literal, charset);
+            for (int position = 0; position < folding.length(); position++) {
+                final int own = root(result, folding.getEncoded()[position] & 0xFF);
+                for (int value = 0; value < result.length; value++) {
+                    if (folding.accepts(position, (byte) value)) {
+                        result[root(result, value)] = own;
+                    }
+                }
+            }
+        }
+        for (int value = 0; value < result.length; value++) {
+            result[value] = root(result, value);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the representative of the byte group
+     *
+     * @param parents the parent of every byte in its group
+     * @param value   the byte
+     * @return the byte representing the group
+     */
+    private static int root(final int[] parents, final int value) {
+        int current = value;
+        while (parents[current] != current) {
+            current = parents[current];
+        }
+        return current;
+    }
+
+    /**
+     * Inserts every pattern into the trie, missing transitions are left as 0
+     *
+     * @param trie    the transition table to fill
+     * @param lengths the lengths of the patterns ending in each state
+     * @return the number of used states
+     */
+    private int buildTrie(final int[] trie, final int[] lengths) {
+        int stateCount = 1;
+        for (final byte[] pattern : patterns) {
+            int state = 0;
+            for (final byte b : pattern) {
+                final int index = state * classCount + classes[b & 0xFF];
+                if (trie[index] == 0) {
+                    trie[index] = stateCount++;
+                }
+                state = trie[index];
+            }
+            lengths[state] = pattern.length;
+        }
+        return stateCount;
+    }
+
+    /**
+     * Replaces the missing transitions with the transitions of the failure states in breadth-first order,
+     * every state inherits the longest match ending in its failure state if it has none of its own
+     */
+    private void link() {
+        final int[] failures = new int[matchLengths.length];
+        final int[] queue = new int[matchLengths.length];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < classCount; c++) {
+            final int next = transitions[c];
+            if (next != 0) {
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            final int state = queue[head++];
+            final int failure = failures[state];
+            if (matchLengths[state] == 0) {
+                matchLengths[state] = matchLengths[failure];
+            }
+            for (int c = 0; c < classCount; c++) {
+                final int index = state * classCount + c;
+                final int next = transitions[index];
+                if (next == 0) {
+                    transitions[index] = transitions[failure * classCount + c];
+                } else {
+                    failures[next] = transitions[failure * classCount + c];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the next state numbers by their row offsets, complemented if a literal ends in the state
+     */
+    private void encode() {
+        for (int i = 0; i < transitions.length; i++) {
+            final int next = transitions[i];
+            transitions[i] = matchLengths[next] > 0 ? ~(next * classCount) : next * classCount;
+        }
+    }
+
+    /**
+     * Runs the automaton from the start state, so the reported match is the one ending first.
+     * If several literals end there, the longest one is reported.
+     */
+    @Override
+    public long find(final ByteBuffer buffer, final int from, final int to) {
+        int row = 0;
+        for (int i = from; i < to; i++) {
+            row = transitions[row + classes[buffer.get(i) & 0xFF]];
+            if (row < 0) {
+                row = ~row;
+                final int start = i + 1 - matchLengths[row / classCount];
+                if (!verified || isVariant(buffer, start, i + 1)) {
+                    return QueryMatcher.match(start, i + 1);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the candidate and compares it with the literals ignoring the case
+     *
+     * @param buffer the buffer containing the candidate
+     * @param start  the index of the first byte of the candidate
+     * @param end    the index after the last byte of the candidate
+     * @return true if the candidate is a case variant of some literal
+     */
+    private boolean isVariant(final ByteBuffer buffer, final int start, final int end) {
+        final byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        final String candidate = new String(bytes, charset);
+        return literals.stream().anyMatch(candidate::equalsIgnoreCase);
+    }
+
+    @Override
+    public int maxLength() {
+        return maxLength;
+    }
+
+    /**
+     * The index keeps the exact bytes, so any file may contain the literals if the case is ignored
+     */
+    @Override
+    public List<byte[]> requiredLiterals() {
+        return ignoreCase ? Collections.emptyList() : new ArrayList<>(patterns);
+    }
+
+    @Override
+    public Pattern textPattern() {
+        return Pattern.compile(literals.stream()
+                .sorted((left, right) -> right.length() - left.length())
+                .map(Pattern::quote)
+                .collect(Collectors.joining("|")), ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+    }
+}
@@ -0,0 +1,459 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Searches inside gzip and zip files without writing anything to the disk, only the viewer inflates an entry
+ * into a temporary file.
+ * Every archive entry gets a virtual path below the archive path: "app.log.1.gz/app.log.1" or "logs.zip/app.log",
+ * so the tree shows the entries as children of the archive.
+ * Large gzip files made of many members are split at member boundaries and the parts are decompressed in parallel.
+ * The parts are searched in the encoding detected at the beginning of the content. The parts count the lines
+ * by single 0x0A bytes, so UTF-16 content is decompressed sequentially.
+ */
+@Log4j2
+@Getter
+@RequiredArgsConstructor
+class ArchiveScanner {
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String ZIP_SUFFIX = ".zip";
+    private static final Pattern ROTATION = Pattern.compile("\\.\\d+$");
+    private static final long MIN_PART_SIZE = 16 * 1024 * 1024;
+    private static final int MEMBER_SEARCH_LIMIT = 1024 * 1024;
+    private static final int VERIFY_SIZE = 4096;
+    private static final int INFLATE_BUFFER_SIZE = 64 * 1024;
+
+    private final FileScanner scanner;
+
+    /**
+     * Tells whether the file should be searched: files with the extension, rotated ones like "app.log.1",
+     * compressed ones like "app.log.2.gz" and zip files
+     *
+     * @param matcher the matcher of the file names with the extension
+     * @param name    the file name
+     * @return true if the file or its entries may be searched
+     */
+    static boolean matches(final PathMatcher matcher, final Path name) {
+        String plain = name.toString();
+        if (plain.endsWith(ZIP_SUFFIX)) {
+            return true;
+        }
+        if (plain.endsWith(GZIP_SUFFIX)) {
+            plain = plain.substring(0, plain.length() - GZIP_SUFFIX.length());
+        }
+        return matcher.matches(name) || matcher.matches(Paths.get(plain))
+                || matcher.matches(Paths.get(ROTATION.matcher(plain).replaceFirst("")));
+    }
+
+    /**
+     * Tells whether the file is an archive
+     *
+     * @param path the file
+     * @return true for gzip and zip files
+     */
+    static boolean isArchive(final Path path) {
+        if (Objects.isNull(path.getFileName())) {
+            return false;
+        }
+        final String name = path.getFileName().toString();
+        return name.endsWith(GZIP_SUFFIX) || name.endsWith(ZIP_SUFFIX);
+    }
+
+    /**
+     * Finds the archive containing the entry
+     *
+     * @param path a virtual path of an archive entry
+     * @return the archive file or nothing if the path is not inside an archive
+     */
+    static Optional<Path> archiveOf(final Path path) {
+        for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+            if (isArchive(parent) && Files.isRegularFile(parent)) {
+                return Optional.of(parent);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Searches every matching entry of the archive
+     *
+     * @param archive    the gzip or zip file
+     * @param pattern    the matcher of the file names with the extension
+     * @param maxMatches the number of matches to stop after in every entry
+     * @return the matches of every searched entry, empty ones included to tell the number of searched bytes
+     * @throws IOException if the archive could not be read
+     */
+    List<FileMatches> find(final Path archive, final PathMatcher pattern, final int maxMatches) throws IOException {
+        final EntryMessage m = log.isTraceEnabled()
+                ? log.traceEntry("find(archive = {}, maxMatches = {})", archive, maxMatches) : null;
+        final List<FileMatches> result = new ArrayList<>();
+        if (archive.getFileName().toString().endsWith(GZIP_SUFFIX)) {
+            result.add(findGzip(archive, maxMatches));
+        } else {
+            try (final ZipFile zip = new ZipFile(archive.toFile())) {
+                final Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    final Path path = archive.resolve(entry.getName()).normalize();
+                    if (!isSearched(archive, entry, pattern)) {
+                        continue;
+                    }
+                    try (final ReadableByteChannel channel = Channels.newChannel(zip.getInputStream(entry))) {
+                        result.add(getScanner().find(path, channel,
+                                () -> Channels.newChannel(zip.getInputStream(entry)), maxMatches));
+                    }
+                }
+            }
+        }
+        return log.traceExit(m, result);
+    }
+
+    /**
+     * Tells whether the zip entry is searched: a file with the extension inside the archive
+     *
+     * @param archive the zip file
+     * @param entry   the entry of the zip file
+     * @param pattern the matcher of the file names with the extension
+     * @return false for directories, nested archives and entries pointing outside of the archive
+     */
+    private static boolean isSearched(final Path archive, final ZipEntry entry, final PathMatcher pattern) {
+        final Path name = Paths.get(entry.getName());
+        return !entry.isDirectory() && archive.resolve(name).normalize().startsWith(archive) && !isArchive(name)
+                && matches(pattern, name.getFileName());
+    }
+
+    /**
+     * Lists the trigrams of the decompressed content for the {@link TrigramIndex},
+     * a zip file has the trigrams of every entry it is searched in
+     *
+     * @param archive the gzip or zip file
+     * @param pattern the matcher of the file names with the extension
+     * @return the sorted distinct trigrams
+     * @throws IOException if the archive could not be read
+     */
+    static int[] trigrams(final Path archive, final PathMatcher pattern) throws IOException {
+        final EntryMessage m = log.traceEntry("trigrams(archive = {})", archive);
+        if (archive.getFileName().toString().endsWith(GZIP_SUFFIX)) {
+            try (final FileChannel file = FileChannel.open(archive, StandardOpenOption.READ);
+                 final GzipChannel channel = new GzipChannel(file, 0)) {
+                return log.traceExit(m, Trigrams.get().of(channel));
+            }
+        }
+        int[] result = new int[0];
+        try (final ZipFile zip = new ZipFile(archive.toFile())) {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                if (isSearched(archive, entry, pattern)) {
+                    try (final ReadableByteChannel channel = Channels.newChannel(zip.getInputStream(entry))) {
+                        result = Trigrams.union(result, Trigrams.get().of(channel));
+                    }
+                }
+            }
+        }
+        return log.traceExit(m, result);
+    }
+
+    /**
+     * Searches the decompressed content of the gzip file, in parallel if it has enough members
+     *
+     * @param archive    the gzip file
+     * @param maxMatches the number of matches to stop after
+     * @return the matches reported under the virtual path of the content
+     * @throws IOException if the file could not be read
+     */
+    private FileMatches findGzip(final Path archive, final int maxMatches) throws IOException {
+        final EntryMessage m = log.isTraceEnabled()
+                ? log.traceEntry("findGzip(archive = {}, maxMatches = {})", archive, maxMatches) : null;
+        final Path entry = gzipEntry(archive);
+        try (final FileChannel file = FileChannel.open(archive, StandardOpenOption.READ)) {
+            final List<Long> starts = memberStarts(file);
+            final TextEncoding encoding = starts.size() > 1 ? detect(file) : TextEncoding.UTF_8;
+            if (starts.size() > 1 && encoding.unitSize() == 1) {
+                final Optional<FileMatches> matches = findParts(file, entry, starts, encoding, maxMatches);
+                if (matches.isPresent()) {
+                    return log.traceExit(m, matches.get());
+                }
+                log.warn("findGzip(archive = {}): parts are not aligned, scanning sequentially", archive);
+            }
+            try (final GzipChannel channel = new GzipChannel(file, 0)) {
+                return log.traceExit(m, getScanner().find(entry, channel, () -> new GzipChannel(file, 0), maxMatches));
+            }
+        }
+    }
+
+    /**
+     * Decompresses the beginning of the gzip file to detect the encoding of its content
+     *
+     * @param file the gzip file
+     * @return the encoding of the content
+     * @throws IOException if the file could not be decompressed
+     */
+    private TextEncoding detect(final FileChannel file) throws IOException {
+        try (final GzipChannel channel = new GzipChannel(file, 0)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(PathFilter.SAMPLE_SIZE);
+            int read = 0;
+            while (read >= 0 && buffer.hasRemaining()) {
+                read = channel.read(buffer);
+            }
+            return getScanner().getQuery().detect(buffer, 0, buffer.position());
+        }
+    }
+
+    /**
+     * Scans the parts of the gzip file on the split pool and joins their matches
+     *
+     * @param file       the gzip file
+     * @param entry      the virtual path of the content
+     * @param starts     the member offsets the parts start at
+     * @param encoding   the encoding of the content
+     * @param maxMatches the number of matches to stop after
+     * @return the matches or nothing if some part did not end at the start of the next one
+     */
+    private Optional<FileMatches> findParts(final FileChannel file, final Path entry, final List<Long> starts,
+                                            final TextEncoding encoding, final int maxMatches) {
+        final EntryMessage m = log.isTraceEnabled()
+                ? log.traceEntry("findParts(entry = {}, starts = {})", entry, starts) : null;
+        final int overlap = Math.max(getScanner().getQuery().matcher(encoding).maxLength() - 1, 0);
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final FileScanner scanner = new FileScanner(getScanner().getQuery(),
+                () -> stopped.get() || getScanner().getCancelled().getAsBoolean(), getScanner().isSkipBinary());
+        final List<ForkJoinTask<Part>> tasks = new ArrayList<>();
+        for (int i = 0; i < starts.size(); i++) {
+            final long start = starts.get(i);
+            final long stopAt = i + 1 < starts.size() ? starts.get(i + 1) : Long.MAX_VALUE;
+            tasks.add(ScanScheduler.get().getSplitPool().submit(() -> {
+                try (final GzipChannel channel = new GzipChannel(file, start, stopAt, overlap)) {
+                    final FileMatches matches = scanner.find(entry, channel,
+                            () -> new GzipChannel(file, start, stopAt, overlap), maxMatches, Optional.of(encoding));
+                    return new Part(matches, channel);
+                }
+            }));
+        }
+        final FileMatches result = new FileMatches(entry, maxMatches);
+        result.setEncoding(encoding);
+        long before = 0;
+        int linesBefore = 0;
+        long lineTail = 0;
+        boolean aligned = true;
+        for (final ForkJoinTask<Part> task : tasks) {
+            if (stopped.get()) {
+                // the file is closed once the parts are joined, so the running ones are waited for
+                task.cancel(false);
+                task.quietlyJoin();
+                if (task.isCompletedNormally()) {
+                    result.addScanned(task.getRawResult().matches.getScanned());
+                }
+                continue;
+            }
+            final Part part = task.join();
+            result.addScanned(part.matches.getScanned());
+            part.matches.cut(part.size);
+            result.append(part.matches, before, linesBefore, lineTail);
+            aligned = part.aligned || result.isTruncated();
+            if (result.isTruncated() || !part.aligned) {
+                stopped.set(true);
+                continue;
+            }
+            before += part.size;
+            linesBefore += part.lineFeeds;
+            lineTail = part.lineFeeds > 0 ? part.lineTail : lineTail + part.lineTail;
+        }
+        if (!aligned) {
+            return log.traceExit(m, Optional.empty());
+        }
+        result.trim();
+        return log.traceExit(m, Optional.of(result));
+    }
+
+    /**
+     * Picks member offsets which split the file into parts for the cores of the split pool.
+     * A member start is recognized by its header and checked by decompressing its beginning,
+     * a false start is caught later because the previous part does not end there.
+     * If no member starts near the first split point, the file is taken for a single member one.
+     *
+     * @param file the gzip file
+     * @return the offsets of the parts, just 0 if the file is too small to split or has a single member
+     * @throws IOException if the file could not be read
+     */
+    private static List<Long> memberStarts(final FileChannel file) throws IOException {
+        final long size = file.size();
+        final int parts = (int) Math.min(ScanScheduler.get().getSplitPool().getParallelism(), size / MIN_PART_SIZE);
+        final List<Long> result = new ArrayList<>(Collections.singletonList(0L));
+        for (int i = 1; i < parts; i++) {
+            final long from = Math.max(size * i / parts, result.get(result.size() - 1) + 1);
+            final Optional<Long> start = memberStart(file, from);
+            if (!start.isPresent() && result.size() == 1) {
+                break;
+            }
+            start.ifPresent(result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Looks for the first member header after the offset
+     *
+     * @param file the gzip file
+     * @param from the offset to start from
+     * @return the offset of the header or nothing if none has been found nearby
+     * @throws IOException if the file could not be read
+     */
+    private static Optional<Long> memberStart(final FileChannel file, final long from) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(MEMBER_SEARCH_LIMIT);
+        file.read(buffer, from);
+        for (int i = 0; i + 3 < buffer.position(); i++) {
+            if ((buffer.get(i) & 0xFF) == 0x1f && (buffer.get(i + 1) & 0xFF) == 0x8b && buffer.get(i + 2) == 8
+                    && (buffer.get(i + 3) & 0xE0) == 0 && isMember(file, from + i)) {
+                return Optional.of(from + i);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Checks that the data at the offset can be decompressed
+     *
+     * @param file   the gzip file
+     * @param offset the offset of the supposed member header
+     * @return true if the beginning of the member has been decompressed
+     */
+    private static boolean isMember(final FileChannel file, final long offset) {
+        try (final GzipChannel channel = new GzipChannel(file, offset, offset + 1, 0)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(VERIFY_SIZE);
+            int read = 0;
+            while (read >= 0 && buffer.hasRemaining()) {
+                read = channel.read(buffer);
+            }
+            return true;
+        } catch (final IOException err) {
+            return false;
+        }
+    }
+
+    /**
+     * Builds the virtual path of the gzip content
+     *
+     * @param archive the gzip file
+     * @return the path of the content below the archive path
+     */
+    private static Path gzipEntry(final Path archive) {
+        final String name = archive.getFileName().toString();
+        return archive.resolve(name.substring(0, name.length() - GZIP_SUFFIX.length()));
+    }
+
+    /**
+     * Decompresses the archive entry into a temporary file and maps it for the viewer,
+     * so the heap does not depend on the size of the entry
+     *
+     * @param path  the virtual path of the entry
+     * @param limit the number of bytes to decompress, the rest of the entry is not needed
+     * @return the decompressed content
+     * @throws IOException if the archive could not be read or does not contain the entry
+     */
+    static MappedFile load(final Path path, final long limit) throws IOException {
+        final EntryMessage m = log.traceEntry("load(path = {}, limit = {})", path, limit);
+        final Path archive = archiveOf(path).orElseThrow(() -> new IOException(path + " is not inside an archive"));
+        if (archive.getFileName().toString().endsWith(GZIP_SUFFIX)) {
+            try (final FileChannel file = FileChannel.open(archive, StandardOpenOption.READ);
+                 final GzipChannel channel = new GzipChannel(file, 0)) {
+                return log.traceExit(m, inflate(path, channel, limit));
+            }
+        }
+        try (final ZipFile zip = new ZipFile(archive.toFile())) {
+            final String name = archive.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/");
+            final ZipEntry entry = zip.getEntry(name);
+            if (entry == null) {
+                throw new IOException(path + " is not found in " + archive);
+            }
+            try (final ReadableByteChannel channel = Channels.newChannel(zip.getInputStream(entry))) {
+                return log.traceExit(m, inflate(path, channel, limit));
+            }
+        }
+    }
+
+    /**
+     * Copies the decompressed content into a temporary file and maps it.
+     * The file is deleted right after mapping, the mapping keeps the content until it is collected.
+     *
+     * @param path    the virtual path of the entry
+     * @param channel the decompressed content
+     * @param limit   the number of bytes to copy at most
+     * @return the mapped content
+     * @throws IOException if the content could not be read or written
+     */
+    private static MappedFile inflate(final Path path, final ReadableByteChannel channel, final long limit)
+            throws IOException {
+        final Path temporary = Files.createTempFile("entry", ".tmp");
+        try {
+            try (final FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(INFLATE_BUFFER_SIZE);
+                long copied = 0;
+                while (copied < limit) {
+                    buffer.clear().limit((int) Math.min(buffer.capacity(), limit - copied));
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                    buffer.flip();
+                    copied += buffer.remaining();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+            }
+            return new MappedFile(path, temporary);
+        } finally {
+            try {
+                Files.delete(temporary);
+            } catch (final IOException err) {
+                // a mapped file can not be deleted on Windows
+                log.debug("inflate(path = {}): {} is deleted on exit", path, temporary, err);
+                temporary.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * The outcome of a single part of a gzip file
+     */
+    private static class Part {
+        private final FileMatches matches;
+        private final boolean aligned;
+        private final long size;
+        private final int lineFeeds;
+        private final long lineTail;
+
+        Part(final FileMatches matches, final GzipChannel channel) {
+            this.matches = matches;
+            this.aligned = channel.isAligned();
+            this.size = channel.getBoundaryOutput() >= 0 ? channel.getBoundaryOutput() : channel.getProduced();
+            this.lineFeeds = channel.getLineFeeds();
+            this.lineTail = channel.getLineTail();
+        }
+    }
+}
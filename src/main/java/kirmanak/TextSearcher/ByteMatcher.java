@@ -0,0 +1,96 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Boyer-Moore-Horspool matcher working on the raw bytes of the encoded query
+ */
+@Log4j2
+@Getter
+class ByteMatcher implements QueryMatcher {
+    private final Charset charset;
+    private final byte[] pattern;
+    private final int[] shifts = new int[256];
+
+    ByteMatcher(final String text, final Charset charset) {
+        final EntryMessage m = log.traceEntry("ByteMatcher(text = {}, charset = {})", text, charset);
+        this.charset = charset;
+        this.pattern = text.getBytes(charset);
+        Arrays.fill(shifts, Math.max(pattern.length, 1));
+        for (int i = 0; i < pattern.length - 1; i++) {
+            shifts[pattern[i] & 0xFF] = pattern.length - 1 - i;
+        }
+        log.traceExit(m);
+    }
+
+    @Override
+    public long find(final ByteBuffer buffer, final int from, final int to) {
+        final int hit = indexOf(buffer, from, to);
+        return hit < 0 ? -1 : QueryMatcher.match(hit, hit + pattern.length);
+    }
+
+    @Override
+    public int maxLength() {
+        return pattern.length;
+    }
+
+    @Override
+    public List<byte[]> requiredLiterals() {
+        return Collections.singletonList(pattern);
+    }
+
+    @Override
+    public Pattern textPattern() {
+        return Pattern.compile(Pattern.quote(new String(pattern, charset)));
+    }
+
+    /**
+     * Looks for the pattern in the buffer between the provided absolute positions
+     *
+     * @param buffer the buffer to search in, its position and limit are ignored
+     * @param from   the first index to check (inclusive)
+     * @param to     the last index to check (exclusive)
+     * @return the index of the first match or -1 if there is none
+     */
+    int indexOf(final ByteBuffer buffer, final int from, final int to) {
+        final int last = pattern.length - 1;
+        if (last < 0) {
+            return from < to ? from : -1;
+        }
+        final byte lastByte = pattern[last];
+        int start = from;
+        while (start + last < to) {
+            final byte current = buffer.get(start + last);
+            if (current == lastByte && matchesAt(buffer, start)) {
+                return start;
+            }
+            start += shifts[current & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the pattern with the buffer content starting from the index
+     *
+     * @param buffer the buffer to compare with
+     * @param start  the index of the first byte to compare
+     * @return true if the whole pattern is present at the index
+     */
+    private boolean matchesAt(final ByteBuffer buffer, final int start) {
+        for (int i = pattern.length - 2; i >= 0; i--) {
+            if (buffer.get(start + i) != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,92 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+/**
+ * Case folding table of an encoded literal: the set of bytes accepted at every byte position of the literal.
+ * A position accepts the bytes the upper, lower and title case variants of its character have there,
+ * so the literal is matched on the raw bytes without decoding or lowercasing the text.
+ * In ASCII and in single byte encodings the variants differ in a single byte and the table is exact.
+ * Variants of a UTF-8 character may differ in several bytes, e.g. "р" is D1 80 and "Р" is D0 A0,
+ * then the table accepts the mixed sequences too and a match has to be verified by decoding it.
+ * Variants encoded into a different number of bytes, like the Kelvin sign for "k", are not matched.
+ */
+@Getter
+class CaseFolding {
+    private final byte[] encoded;
+    private final long[] table;
+    private final boolean exact;
+
+    /**
+     * Builds the table, the literal must be representable in the charset
+     *
+     * @param literal the literal to fold
+     * @param charset the charset of the searched text
+     */
+    CaseFolding(final String literal, final Charset charset) {
+        this.encoded = literal.getBytes(charset);
+        this.table = new long[encoded.length * 4];
+        final CharsetEncoder encoder = charset.newEncoder();
+        boolean allExact = true;
+        int position = 0;
+        for (int i = 0; i < literal.length(); ) {
+            final int codePoint = literal.codePointAt(i);
+            final int length = new String(Character.toChars(codePoint)).getBytes(charset).length;
+            int differing = 0;
+            for (final int variant : new int[]{codePoint, Character.toLowerCase(codePoint),
+                    Character.toUpperCase(codePoint), Character.toTitleCase(codePoint)}) {
+                final String text = new String(Character.toChars(variant));
+                if (!encoder.canEncode(text)) {
+                    continue;
+                }
+                final byte[] bytes = text.getBytes(charset);
+                if (bytes.length != length) {
+                    continue;
+                }
+                for (int k = 0; k < length; k++) {
+                    accept(position + k, bytes[k]);
+                    if (bytes[k] != encoded[position + k]) {
+                        differing |= 1 << k;
+                    }
+                }
+            }
+            allExact &= Integer.bitCount(differing) <= 1;
+            position += length;
+            i += Character.charCount(codePoint);
+        }
+        this.exact = allExact;
+    }
+
+    /**
+     * Adds the byte to the accepted ones
+     *
+     * @param position the position in the encoded literal
+     * @param value    the accepted byte
+     */
+    private void accept(final int position, final byte value) {
+        table[position * 4 + ((value & 0xFF) >>> 6)] |= 1L << value;
+    }
+
+    /**
+     * Tells whether the byte is accepted at the position
+     *
+     * @param position the position in the encoded literal
+     * @param value    the byte of the text
+     * @return true if some case variant of the character has the byte there
+     */
+    boolean accepts(final int position, final byte value) {
+        return (table[position * 4 + ((value & 0xFF) >>> 6)] & 1L << value) != 0;
+    }
+
+    /**
+     * Gets the length of the encoded literal
+     *
+     * @return the number of bytes
+     */
+    int length() {
+        return encoded.length;
+    }
+}
@@ -0,0 +1,99 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Case insensitive Boyer-Moore-Horspool matcher comparing the raw bytes with the {@link CaseFolding} table,
+ * every byte accepted at a position of the literal gets the shift of that position.
+ * When the table is not exact, a candidate is decoded and compared ignoring the case.
+ */
+@Log4j2
+@Getter
+class CaseFoldingMatcher implements QueryMatcher {
+    private final String literal;
+    private final Charset charset;
+    private final CaseFolding folding;
+    private final int[] shifts = new int[256];
+
+    CaseFoldingMatcher(final String literal, final Charset charset) {
+        final EntryMessage m = log.traceEntry("CaseFoldingMatcher(literal = {}, charset = {})", literal, charset);
+        this.literal = literal;
+        this.charset = charset;
+        this.folding = new CaseFolding(literal, charset);
+        final int length = folding.length();
+        Arrays.fill(shifts, Math.max(length, 1));
+        for (int i = 0; i < length - 1; i++) {
+            for (int value = 0; value < 256; value++) {
+                if (folding.accepts(i, (byte) value)) {
+                    shifts[value] = length - 1 - i;
+                }
+            }
+        }
+        log.traceExit(m);
+    }
+
+    @Override
+    public long find(final ByteBuffer buffer, final int from, final int to) {
+        final int last = folding.length() - 1;
+        if (last < 0) {
+            return from < to ? QueryMatcher.match(from, from) : -1;
+        }
+        int start = from;
+        while (start + last < to) {
+            final byte current = buffer.get(start + last);
+            if (folding.accepts(last, current) && matchesAt(buffer, start)) {
+                return QueryMatcher.match(start, start + last + 1);
+            }
+            start += shifts[current & 0xFF];
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the literal with the buffer content starting from the index
+     *
+     * @param buffer the buffer to compare with
+     * @param start  the index of the first byte to compare
+     * @return true if some case variant of the literal is present at the index
+     */
+    private boolean matchesAt(final ByteBuffer buffer, final int start) {
+        for (int i = folding.length() - 2; i >= 0; i--) {
+            if (!folding.accepts(i, buffer.get(start + i))) {
+                return false;
+            }
+        }
+        if (folding.isExact()) {
+            return true;
+        }
+        final byte[] bytes = new byte[folding.length()];
+        buffer.get(start, bytes);
+        return new String(bytes, charset).equalsIgnoreCase(literal);
+    }
+
+    @Override
+    public int maxLength() {
+        return folding.length();
+    }
+
+    /**
+     * The index keeps the exact bytes, so any file may contain some case variant
+     */
+    @Override
+    public List<byte[]> requiredLiterals() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Pattern textPattern() {
+        return Pattern.compile(Pattern.quote(literal), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+}
@@ -0,0 +1,303 @@
+package kirmanak.TextSearcher;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Headless grep-like mode. Prints "path:line:offset:text" for every match,
+ * exits with 0 if something was found, 1 if nothing was found and 2 on errors.
+ * The search runs on the {@link SearchServer} if it is running, the lines are read by this process anyway.
+ */
+@Log4j2
+class CommandLine {
+    static final String FLAG = "--cli";
+    private static final int MAX_LINE_BYTES = 4096;
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: TextSearcher --cli [options] TEXT [ROOT]",
+            "       TextSearcher --cli [options] (-e PATTERN | -f FILE)... [ROOT]",
+            "  -e, --regexp PATTERN      search for PATTERN, may be repeated to search for any of them",
+            "  -f, --file FILE           search for every line of FILE",
+            "  -E, --extended-regexp     treat the patterns as java.util.regex expressions",
+            "  -i, --ignore-case         match the upper and lower case variants of the patterns",
+            "  -w, --word-regexp         match only whole words",
+            "  -x, --extension EXT       search in *.EXT files (default: log)",
+            "      --include GLOB        search in the files whose names match GLOB instead of *.EXT, may be repeated",
+            "      --exclude GLOB        skip the files and directories whose names match GLOB, a GLOB with a slash",
+            "                            is matched against the path relative to ROOT, may be repeated",
+            "      --min-size SIZE       skip the files smaller than SIZE, e.g. 10K",
+            "      --max-size SIZE       skip the files larger than SIZE, e.g. 100M",
+            "      --changed-within AGE  skip the files modified earlier than AGE ago, e.g. 12h or 7d",
+            "  -a, --text                search in binary files too",
+            "  -l, --files-with-matches  print only the names of the files containing TEXT",
+            "  -m, --max-count NUM       stop reading a file after NUM matches",
+            "      --index               use and update the trigram index of ROOT",
+            "      --virtual-threads     scan every file on its own virtual thread",
+            "      --local               search in this process even if the search server is running",
+            "  -s, --stats               print the search statistics and who ran the search to the standard error",
+            "  -h, --help                print this help"
+    );
+
+    private final PrintStream out = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024), false
+    );
+    private String extension = "log";
+    private boolean filesOnly = false;
+    private int maxCount = Integer.MAX_VALUE;
+    private boolean useIndex = false;
+    private ScanMode scanMode = ScanMode.POOL;
+    private boolean regex = false;
+    private boolean ignoreCase = false;
+    private boolean wholeWord = false;
+    private boolean stats = false;
+    private boolean local = false;
+    private final List<String> includes = new ArrayList<>();
+    private final List<String> excludes = new ArrayList<>();
+    private long minSize = 0;
+    private long maxSize = Long.MAX_VALUE;
+    private Duration changedWithin = null;
+    private boolean skipBinary = true;
+    private final List<String> patterns = new ArrayList<>();
+    private final List<String> positional = new ArrayList<>();
+
+    private CommandLine() {
+    }
+
+    /**
+     * Runs the search described by the arguments
+     *
+     * @param args the command line arguments following {@link #FLAG}
+     * @return the process exit code
+     */
+    static int run(final String[] args) {
+        final EntryMessage m = log.traceEntry("run(args = {})", (Object) args);
+        final CommandLine commandLine = new CommandLine();
+        try {
+            if (!commandLine.parse(args)) {
+                System.err.println(USAGE);
+                return log.traceExit(m, 2);
+            }
+            return log.traceExit(m, commandLine.search());
+        } catch (final IOException | ExecutionException | IllegalArgumentException err) {
+            System.err.println(err.getMessage());
+            return log.traceExit(m, 2);
+        } catch (final InterruptedException err) {
+            Thread.currentThread().interrupt();
+            return log.traceExit(m, 2);
+        } finally {
+            commandLine.out.flush();
+            IndexManager.closeAll();
+            ScanScheduler.get().shutdown();
+        }
+    }
+
+    /**
+     * Parses the options and the positional arguments
+     *
+     * @param args the command line arguments
+     * @return false if the usage should be printed
+     * @throws IOException if the patterns file could not be read
+     */
+    private boolean parse(final String[] args) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-e":
+                case "--regexp":
+                    patterns.add(value(args, ++i));
+                    break;
+                case "-f":
+                case "--file":
+                    for (final String line : Files.readAllLines(Paths.get(value(args, ++i)))) {
+                        if (!line.isEmpty()) {
+                            patterns.add(line);
+                        }
+                    }
+                    break;
+                case "-E":
+                case "--extended-regexp":
+                    regex = true;
+                    break;
+                case "-i":
+                case "--ignore-case":
+                    ignoreCase = true;
+                    break;
+                case "-w":
+                case "--word-regexp":
+                    wholeWord = true;
+                    break;
+                case "-x":
+                case "--extension":
+                    extension = value(args, ++i);
+                    break;
+                case "--include":
+                    includes.add(value(args, ++i));
+                    break;
+                case "--exclude":
+                    excludes.add(value(args, ++i));
+                    break;
+                case "--min-size":
+                    minSize = PathFilter.parseSize(value(args, ++i));
+                    break;
+                case "--max-size":
+                    maxSize = PathFilter.parseSize(value(args, ++i));
+                    break;
+                case "--changed-within":
+                    changedWithin = PathFilter.parseAge(value(args, ++i));
+                    break;
+                case "-a":
+                case "--text":
+                    skipBinary = false;
+                    break;
+                case "-l":
+                case "--files-with-matches":
+                    filesOnly = true;
+                    break;
+                case "-m":
+                case "--max-count":
+                    maxCount = Integer.parseInt(value(args, ++i));
+                    break;
+                case "--index":
+                    useIndex = true;
+                    break;
+                case "--virtual-threads":
+                    scanMode = ScanMode.VIRTUAL_THREADS;
+                    break;
+                case "--local":
+                    local = true;
+                    break;
+                case "-s":
+                case "--stats":
+                    stats = true;
+                    break;
+                case "-h":
+                case "--help":
+                    return false;
+                default:
+                    positional.add(args[i]);
+            }
+        }
+        if (patterns.isEmpty()) {
+            return positional.size() == 1 || positional.size() == 2;
+        }
+        return positional.size() <= 1;
+    }
+
+    /**
+     * Gets the option value
+     *
+     * @param args  the command line arguments
+     * @param index the index of the value
+     * @return the option value
+     */
+    private static String value(final String[] args, final int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(String.format("%s requires a value", args[index - 1]));
+        }
+        return args[index];
+    }
+
+    /**
+     * Runs the search printing the matches as they are found
+     *
+     * @return the process exit code
+     */
+    private int search() throws IOException, InterruptedException, ExecutionException {
+        if (patterns.isEmpty()) {
+            patterns.add(positional.remove(0));
+        }
+        final Path root = Paths.get(positional.isEmpty() ? "." : positional.get(0));
+        final QueryMode mode = regex ? QueryMode.REGEX : patterns.size() > 1 ? QueryMode.ANY : QueryMode.TEXT;
+        final SearchRequest request = new SearchRequest(
+                root, extension, String.join(regex ? "|" : "\n", patterns), mode, ignoreCase, wholeWord, useIndex,
+                false, scanMode, filesOnly ? 1 : maxCount,
+                new PathFilter(includes, excludes, minSize, maxSize, changedWithin, skipBinary)
+        );
+        final Optional<SearchClient> client = local ? Optional.empty() : SearchClient.connect();
+        final int found;
+        final String summary;
+        if (client.isPresent()) {
+            found = client.get().run(request, this::print, () -> {
+            }, () -> false);
+            summary = client.get().getSummary();
+            log.debug("search(): searched by the server on {}", SearchProtocol.socketPath());
+        } else {
+            final SearchEngine engine = new SearchEngine(request, this::print, () -> false);
+            found = engine.run(() -> {
+            });
+            summary = engine.getMetrics().summary();
+        }
+        if (stats) {
+            System.err.println(summary);
+            if (client.isPresent()) {
+                System.err.printf("Searched by the server on %s, --local searches in this process%n",
+                        SearchProtocol.socketPath());
+            }
+        }
+        return found > 0 ? 0 : 1;
+    }
+
+    /**
+     * Prints the matches of a single file without interleaving them with other files
+     *
+     * @param matches the matches to print
+     */
+    private void print(final FileMatches matches) {
+        final StringBuilder builder = new StringBuilder();
+        if (filesOnly) {
+            builder.append(matches.getPath()).append(System.lineSeparator());
+        } else {
+            try {
+                // an archive entry is inflated only up to the line of the last match
+                final long needed = matches.getOffsets()[matches.getCount() - 1] + MAX_LINE_BYTES;
+                final MappedFile file = ArchiveScanner.archiveOf(matches.getPath()).isPresent()
+                        ? ArchiveScanner.load(matches.getPath(), needed) : new MappedFile(matches.getPath());
+                for (int i = 0; i < matches.getCount(); i++) {
+                    builder.append(matches.getPath()).append(':')
+                            .append(matches.getLines()[i]).append(':')
+                            .append(matches.getOffsets()[i]).append(':')
+                            .append(line(file, matches.getEncoding(), matches.getOffsets()[i]))
+                            .append(System.lineSeparator());
+                }
+            } catch (final IOException err) {
+                log.error("print(matches = {})", matches.getPath(), err);
+            }
+        }
+        synchronized (out) {
+            out.append(builder);
+        }
+    }
+
+    /**
+     * Reads the line around the offset, long lines are cut to a few kilobytes around the match
+     *
+     * @param file     the mapped file or the decompressed archive entry
+     * @param encoding the encoding the file has been scanned in
+     * @param offset   the match offset
+     * @return the decoded line without the line terminator and the byte order mark
+     */
+    private static String line(final MappedFile file, final TextEncoding encoding, final long offset) {
+        final long first = Math.max(0, offset - MAX_LINE_BYTES / 2);
+        final long last = Math.min(file.getSize(), offset + MAX_LINE_BYTES / 2);
+        long from = offset;
+        while (from > first && !encoding.isLineStart(file, from)) {
+            from--;
+        }
+        long to = offset;
+        while (to < last && !encoding.isLineFeed(file, to)) {
+            to++;
+        }
+        final long end = to < last ? Math.max(to - encoding.getLineFeedHead(), from) : to;
+        final String line = new String(file.bytes(from, (int) (end - from)), encoding.getCharset());
+        final int length = line.endsWith("\r") ? line.length() - 1 : line.length();
+        return line.substring(from == 0 && line.startsWith("\uFEFF") ? 1 : 0, Math.max(length, 0));
+    }
+}
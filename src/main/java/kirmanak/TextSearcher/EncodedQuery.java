@@ -0,0 +1,104 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The query compiled once per search for every {@link TextEncoding}.
+ * The scanner detects the encoding of every file and takes the matcher of that encoding,
+ * so a UTF-16 or Latin-1 file is searched for the same text as a UTF-8 one without decoding it.
+ */
+@Log4j2
+@Getter
+class EncodedQuery {
+    private final Map<TextEncoding, QueryMatcher> matchers = new EnumMap<>(TextEncoding.class);
+    private final boolean detecting;
+    private final int maxLength;
+
+    EncodedQuery(final QueryMode mode, final String text, final boolean ignoreCase, final boolean wholeWord) {
+        final EntryMessage m = log.traceEntry(
+                "EncodedQuery(mode = {}, text = {}, ignoreCase = {}, wholeWord = {})", mode, text, ignoreCase, wholeWord
+        );
+        int longest = 0;
+        for (final TextEncoding encoding : TextEncoding.values()) {
+            final QueryMatcher matcher = QueryMatcher.of(mode, text, encoding, ignoreCase, wholeWord);
+            matchers.put(encoding, matcher);
+            longest = Math.max(longest, matcher.maxLength());
+        }
+        this.detecting = true;
+        this.maxLength = longest;
+        log.traceExit(m);
+    }
+
+    EncodedQuery(final SearchRequest request) {
+        this(request.getQueryMode(), request.getText(), request.isIgnoreCase(), request.isWholeWord());
+    }
+
+    /**
+     * Uses the matcher for every file, the encodings are not detected and the files are taken for UTF-8
+     *
+     * @param matcher the matcher of the query
+     */
+    EncodedQuery(final QueryMatcher matcher) {
+        for (final TextEncoding encoding : TextEncoding.values()) {
+            matchers.put(encoding, matcher);
+        }
+        this.detecting = false;
+        this.maxLength = matcher.maxLength();
+    }
+
+    /**
+     * Gets the query compiled for the encoding
+     *
+     * @param encoding the encoding of the searched file
+     * @return the matcher
+     */
+    QueryMatcher matcher(final TextEncoding encoding) {
+        return matchers.get(encoding);
+    }
+
+    /**
+     * Detects the encoding of the file from its first bytes
+     *
+     * @param buffer the buffer containing the first bytes of the file
+     * @param from   the index of the first byte
+     * @param to     the index after the last byte of the sample
+     * @return the encoding, UTF-8 if the encodings are not detected
+     */
+    TextEncoding detect(final ByteBuffer buffer, final int from, final int to) {
+        return detecting ? TextEncoding.detect(buffer, from, to) : TextEncoding.UTF_8;
+    }
+
+    /**
+     * Gets the literals of all encodings, a file in any encoding containing the query contains one of them
+     *
+     * @return the distinct encoded literals or an empty list if any file may match
+     */
+    List<byte[]> requiredLiterals() {
+        final List<byte[]> result = new ArrayList<>();
+        for (final QueryMatcher matcher : matchers.values()) {
+            if (matcher == QueryMatcher.NOTHING) {
+                continue;
+            }
+            final List<byte[]> literals = matcher.requiredLiterals();
+            if (literals.isEmpty()) {
+                return Collections.emptyList();
+            }
+            for (final byte[] literal : literals) {
+                if (result.stream().noneMatch(known -> Arrays.equals(known, literal))) {
+                    result.add(literal);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -1,35 +1,23 @@
 package kirmanak.TextSearcher;
 
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
-import javafx.stage.Stage;
-import lombok.extern.log4j.Log4j2;
-import org.apache.logging.log4j.message.EntryMessage;
 
-import java.io.IOException;
+import java.util.Arrays;
 
-@Log4j2
-public class EntryPoint extends Application {
+/**
+ * The main class. It must not extend {@link Application}, otherwise the launcher refuses to start
+ * when JavaFX is loaded from the class path instead of the module path.
+ * Started with {@value CommandLine#FLAG} as the first argument it runs the headless search
+ * without initializing the JavaFX toolkit, with {@value SearchServer#FLAG} it runs the search server.
+ */
+public class EntryPoint {
     public static void main(String[] args) {
-        launch(args);
+        if (args.length > 0 && args[0].equals(CommandLine.FLAG)) {
+            System.exit(CommandLine.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (args.length > 0 && args[0].equals(SearchServer.FLAG)) {
+            System.exit(SearchServer.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        Application.launch(TextSearcherApplication.class, args);
     }
-    /**
-     * Starts the GUI
-     *
-     * @param primaryStage the main window
-     */
-    public void start(final Stage primaryStage) throws IOException {
-        final EntryMessage entryMessage = log.traceEntry("start(primaryStage = {})", primaryStage);
-        final FXMLLoader loader = new FXMLLoader(getClass().getResource("/main.fxml"));
-        final Parent parent = loader.load();
-        final WindowController controller = loader.getController();
-        controller.setPrimaryStage(primaryStage);
-        primaryStage.setTitle("TextSearcher");
-        primaryStage.setScene(new Scene(parent));
-        primaryStage.show();
-        log.traceExit(entryMessage);
-    }
-
 }
@@ -0,0 +1,120 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.BiConsumer;
+
+/**
+ * Walks directories in parallel, every directory is listed by its own fork/join task.
+ * Found files are passed to the consumer right away together with the attributes read for the listing,
+ * so the consumer may block to slow the walk down.
+ * Once the cancellation flag is raised no more directories are listed.
+ * Besides the files with the extension, their rotated and compressed copies and zip files are passed on.
+ * The {@link PathFilter} is applied to the attributes read for the listing, excluded directories are not listed.
+ */
+@Log4j2
+@Getter
+class FileCrawler {
+    private final PathMatcher matcher;
+    private final PathFilter filter;
+    private final BiConsumer<Path, BasicFileAttributes> consumer;
+    private final BooleanSupplier cancelled;
+    private Path root = null;
+
+    FileCrawler(final String pattern, final BiConsumer<Path, BasicFileAttributes> consumer,
+                final BooleanSupplier cancelled) {
+        this(pattern, PathFilter.NONE, consumer, cancelled);
+    }
+
+    FileCrawler(final String pattern, final PathFilter filter, final BiConsumer<Path, BasicFileAttributes> consumer,
+                final BooleanSupplier cancelled) {
+        final EntryMessage m = log.traceEntry(
+                "FileCrawler(pattern = {}, filter = {}, consumer = {}, cancelled = {})",
+                pattern, filter, consumer, cancelled
+        );
+        this.matcher = filter.names(pattern);
+        this.filter = filter;
+        this.consumer = consumer;
+        this.cancelled = cancelled;
+        log.traceExit(m);
+    }
+
+    /**
+     * Starts walking the tree in the background on the walk pool of the {@link ScanScheduler}
+     *
+     * @param root the directory to start from
+     * @return the task which completes when the whole tree has been walked
+     */
+    ForkJoinTask<Void> crawl(final Path root) {
+        final EntryMessage m = log.traceEntry("crawl(root = {})", root);
+        this.root = root;
+        return log.traceExit(m, ScanScheduler.get().getWalkPool().submit(new DirectoryTask(root)));
+    }
+
+    /**
+     * Lists a single directory and forks a task for every subdirectory, the task is never serialized
+     */
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveAction {
+        private final Path directory;
+
+        DirectoryTask(final Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            if (getCancelled().getAsBoolean()) {
+                return;
+            }
+            final List<DirectoryTask> subtasks = new ArrayList<>();
+            try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (final Path entry : stream) {
+                    visit(entry, subtasks);
+                }
+            } catch (final IOException | DirectoryIteratorException err) {
+                log.error(err);
+            }
+            for (int i = subtasks.size() - 1; i >= 0; i--) {
+                subtasks.get(i).join();
+            }
+        }
+
+        /**
+         * Passes a matching regular file to the consumer or forks a task listing the directory unless it is excluded.
+         * Symbolic links are not followed, like in {@link Files#walkFileTree(Path, FileVisitor)}.
+         *
+         * @param entry    the directory entry
+         * @param subtasks the forked tasks to join
+         */
+        private void visit(final Path entry, final List<DirectoryTask> subtasks) {
+            try {
+                final BasicFileAttributes attrs = Files.readAttributes(
+                        entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS
+                );
+                if (attrs.isDirectory()) {
+                    if (!getFilter().excludes(getRoot(), entry)) {
+                        final DirectoryTask subtask = new DirectoryTask(entry);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    }
+                } else if (attrs.isRegularFile() && ArchiveScanner.matches(getMatcher(), entry.getFileName())
+                        && getFilter().accepts(attrs) && !getFilter().excludes(getRoot(), entry)) {
+                    getConsumer().accept(entry, attrs);
+                }
+            } catch (final IOException err) {
+                log.error(err);
+            }
+        }
+    }
+}
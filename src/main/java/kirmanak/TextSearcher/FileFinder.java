@@ -9,21 +9,50 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.LinkedList;
 
+/**
+ * Collects the files with the extension or matching the include globs walking the tree sequentially.
+ * The subtrees excluded by the {@link PathFilter} are skipped without being listed.
+ */
 @Log4j2
 @Getter
 class FileFinder extends SimpleFileVisitor<Path> {
     private final PathMatcher matcher;
+    private final Path root;
+    private final PathFilter filter;
     private final LinkedList<Path> paths = new LinkedList<>();
 
-    FileFinder(final String pattern) {
-        final EntryMessage m = log.traceEntry("FileFinder(pattern = {})", pattern);
-        matcher = FileSystems.getDefault().getPathMatcher(String.format("glob:*.%s", pattern));
+    /**
+     * Collects the files selected by the name selection of an index together with their rotated
+     * and compressed versions, see {@link ArchiveScanner#matches}
+     *
+     * @param selection the extension or the include globs, see {@link PathFilter#selection(String)}
+     */
+    FileFinder(final String selection) {
+        final PathMatcher selected = PathFilter.selected(selection);
+        this.matcher = name -> ArchiveScanner.matches(selected, name);
+        this.root = Paths.get("");
+        this.filter = PathFilter.NONE;
+    }
+
+    FileFinder(final String pattern, final Path root, final PathFilter filter) {
+        final EntryMessage m = log.traceEntry(
+                "FileFinder(pattern = {}, root = {}, filter = {})", pattern, root, filter
+        );
+        this.matcher = filter.names(pattern);
+        this.root = root;
+        this.filter = filter;
         log.traceExit(m);
     }
 
+    @Override
+    public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+        return getFilter().excludes(getRoot(), dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+    }
+
     @Override
     public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
-        if (attrs.isRegularFile() && getMatcher().matches(file.getFileName())) {
+        if (attrs.isRegularFile() && getMatcher().matches(file.getFileName())
+                && getFilter().accepts(attrs) && !getFilter().excludes(getRoot(), file)) {
             paths.add(file);
         }
         return FileVisitResult.CONTINUE;
@@ -0,0 +1,139 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Locations of the query in a single file kept in primitive arrays.
+ * At most limit matches are collected, the rest of the file is not scanned.
+ * The offsets and columns count the bytes of the file in the {@link TextEncoding} it has been found in.
+ */
+@Getter
+class FileMatches {
+    private final Path path;
+    private final int limit;
+    private long[] offsets = new long[4];
+    private int[] lines = new int[4];
+    private int[] columns = new int[4];
+    private int count = 0;
+    private boolean binary = false;
+    private TextEncoding encoding = TextEncoding.UTF_8;
+    private long scanned = 0;
+
+    FileMatches(final Path path, final int limit) {
+        this.path = path;
+        this.limit = limit;
+    }
+
+    /**
+     * Appends a match, matches must be added in the file order
+     *
+     * @param offset the byte offset of the match from the beginning of the file
+     * @param line   the number of the line containing the match starting from 1
+     * @param column the byte offset of the match from the beginning of the line starting from 1
+     */
+    void add(final long offset, final int line, final int column) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+            columns = Arrays.copyOf(columns, count * 2);
+        }
+        offsets[count] = offset;
+        lines[count] = line;
+        columns[count] = column;
+        count++;
+    }
+
+    /**
+     * Replaces the line and the column of a match, used when the lines before it have been counted later
+     *
+     * @param index  the index of the match
+     * @param line   the number of the line containing the match starting from 1
+     * @param column the byte offset of the match from the beginning of the line starting from 1
+     */
+    void locate(final int index, final int line, final int column) {
+        lines[index] = line;
+        columns[index] = column;
+    }
+
+    /**
+     * Appends the matches of a part of the file which has been scanned on its own.
+     * The matches on the first line of the part continue the line the previous parts ended with.
+     *
+     * @param part        the matches of the part with offsets, lines and columns relative to the part
+     * @param before      the number of bytes in the previous parts
+     * @param linesBefore the number of line feeds in the previous parts
+     * @param lineTail    the number of bytes after the last line feed of the previous parts
+     */
+    void append(final FileMatches part, final long before, final int linesBefore, final long lineTail) {
+        for (int i = 0; i < part.count && !isTruncated(); i++) {
+            final int column = part.lines[i] == 1 ? (int) (part.columns[i] + lineTail) : part.columns[i];
+            add(part.offsets[i] + before, part.lines[i] + linesBefore, column);
+        }
+    }
+
+    /**
+     * Drops the matches starting at or after the offset
+     *
+     * @param end the offset of the first byte not belonging to the file part
+     */
+    void cut(final long end) {
+        while (count > 0 && offsets[count - 1] >= end) {
+            count--;
+        }
+    }
+
+    /**
+     * Marks the file as binary, such files are not scanned
+     */
+    void markBinary() {
+        binary = true;
+    }
+
+    /**
+     * Remembers the encoding the file has been scanned in
+     *
+     * @param encoding the detected encoding
+     */
+    void setEncoding(final TextEncoding encoding) {
+        this.encoding = encoding;
+    }
+
+    /**
+     * Counts the bytes the scanner has searched, less than the file size if the scan stopped early
+     *
+     * @param bytes the number of bytes searched
+     */
+    void addScanned(final long bytes) {
+        scanned += bytes;
+    }
+
+    /**
+     * Releases the unused space of the arrays
+     */
+    void trim() {
+        offsets = Arrays.copyOf(offsets, count);
+        lines = Arrays.copyOf(lines, count);
+        columns = Arrays.copyOf(columns, count);
+    }
+
+    /**
+     * Tells whether the search stopped because of the limit
+     *
+     * @return true if the file may contain more matches than collected
+     */
+    boolean isTruncated() {
+        return count >= limit;
+    }
+
+    /**
+     * Tells whether there are no matches
+     *
+     * @return true if nothing has been added
+     */
+    boolean isEmpty() {
+        return count == 0;
+    }
+}
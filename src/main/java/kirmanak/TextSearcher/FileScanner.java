@@ -0,0 +1,620 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Looks for the query bytes in files without decoding them into strings.
+ * Small files are read into a pooled direct buffer, larger ones are memory-mapped.
+ * The buffers are pooled rather than kept per thread, as virtual threads would never reuse them.
+ * Large files are searched step by step, so a cancelled scan stops within one step.
+ * Files of several hundred megabytes are split into ranges scanned on the split pool of the {@link ScanScheduler}.
+ * Decompressed archive entries are streamed through a pooled buffer which slides over the data.
+ * Files whose first bytes look binary are not scanned if the scanner is asked to skip them.
+ * The encoding of every file is detected from the same first bytes and the file is searched with the query
+ * compiled for that encoding, the lines are counted by the line feeds of the encoding.
+ * Lines are counted only up to the matches, a file without matches is never counted at all.
+ * The matches tell how many bytes have been searched, which is less than the size of a file the scan stopped in
+ * and the decompressed size of an archive entry.
+ */
+@Log4j2
+@Getter
+@RequiredArgsConstructor
+class FileScanner {
+    static final int DIRECT_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_MAP_SIZE = 1 << 30;
+    static final int STEP_SIZE = 16 * 1024 * 1024;
+    private static final long MIN_RANGE_SIZE = 64L * 1024 * 1024;
+    private static final int RANGES_PER_THREAD = 4;
+    private static final Queue<ByteBuffer> BUFFERS = new ConcurrentLinkedQueue<>();
+
+    private final EncodedQuery query;
+    private final BooleanSupplier cancelled;
+    private final boolean skipBinary;
+
+    FileScanner(final QueryMatcher matcher, final BooleanSupplier cancelled) {
+        this(new EncodedQuery(matcher), cancelled, false);
+    }
+
+    /**
+     * Tests whether the file contains the query
+     *
+     * @param path the file to check
+     * @return true if the file contains the query, false if it does not or the scan has been cancelled
+     * @throws IOException if the file could not be read
+     */
+    boolean contains(final Path path) throws IOException {
+        return !find(path, 1).isEmpty();
+    }
+
+    /**
+     * Finds the query in the file
+     *
+     * @param path       the file to search in
+     * @param maxMatches the number of matches to stop after
+     * @return the found matches, empty if there are none, the file is binary or the scan has been cancelled
+     * @throws IOException if the file could not be read
+     */
+    FileMatches find(final Path path, final int maxMatches) throws IOException {
+        final FileMatches matches = new FileMatches(path, maxMatches);
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size <= DIRECT_BUFFER_SIZE) {
+                findSmall(channel, matches);
+            } else if (!inspect(channel, matches)) {
+                matches.markBinary();
+            } else if (size >= 2 * MIN_RANGE_SIZE && ScanScheduler.get().getSplitPool().getParallelism() > 1) {
+                findRanges(channel, size, matches);
+            } else {
+                findMapped(channel, size, cursor(matches).mappedFrom(channel));
+            }
+        }
+        matches.trim();
+        return matches;
+    }
+
+    /**
+     * Finds the query in data which can only be read sequentially
+     *
+     * @param path       the path reported with the matches
+     * @param channel    the data to search in, it is not closed
+     * @param reopen     opens the same data again to count the lines before the first match
+     * @param maxMatches the number of matches to stop after
+     * @return the found matches, empty if there are none or the scan has been cancelled
+     * @throws IOException if the channel could not be read
+     */
+    FileMatches find(final Path path, final ReadableByteChannel channel, final ChannelSource reopen,
+                     final int maxMatches) throws IOException {
+        return find(path, channel, reopen, maxMatches, Optional.empty());
+    }
+
+    /**
+     * Finds the query in data which can only be read sequentially.
+     * The bytes slid out of the buffer before the first match are not counted, if the first match is found later
+     * the lines before it are counted by reading the data again. Once the data is known to contain the query,
+     * the bytes are counted before they slide out.
+     *
+     * @param path       the path reported with the matches
+     * @param channel    the data to search in, it is not closed
+     * @param reopen     opens the same data again to count the lines before the first match
+     * @param maxMatches the number of matches to stop after
+     * @param encoding   the encoding of the data or nothing to detect it from the first bytes
+     * @return the found matches, empty if there are none or the scan has been cancelled
+     * @throws IOException if the channel could not be read
+     */
+    FileMatches find(final Path path, final ReadableByteChannel channel, final ChannelSource reopen,
+                     final int maxMatches, final Optional<TextEncoding> encoding) throws IOException {
+        final FileMatches matches = new FileMatches(path, maxMatches);
+        Cursor cursor = null;
+        final ByteBuffer pooled = BUFFERS.poll();
+        final ByteBuffer buffer = Objects.isNull(pooled) ? ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE) : pooled;
+        try {
+            buffer.clear();
+            long base = 0;
+            int read = 0;
+            while (read >= 0 && !matches.isTruncated() && !getCancelled().getAsBoolean()) {
+                final int carried = buffer.position();
+                while (read >= 0 && buffer.hasRemaining()) {
+                    read = channel.read(buffer);
+                }
+                final int filled = buffer.position();
+                matches.addScanned(filled - carried);
+                if (Objects.isNull(cursor)) {
+                    final int sample = Math.min(filled, PathFilter.SAMPLE_SIZE);
+                    matches.setEncoding(encoding.orElseGet(() -> getQuery().detect(buffer, 0, sample)));
+                    cursor = cursor(matches);
+                }
+                final int overlap = Math.max(cursor.matcher.maxLength() - 1, 0);
+                collect(buffer, base, 0, filled, read < 0, cursor);
+                final int keep = read < 0 ? 0 : Math.min(overlap, filled);
+                if (!matches.isEmpty()) {
+                    cursor.countLines(buffer, base, filled - keep);
+                }
+                buffer.flip().position(filled - keep);
+                buffer.compact();
+                base += filled - keep;
+            }
+        } finally {
+            BUFFERS.offer(buffer);
+        }
+        if (Objects.nonNull(cursor) && cursor.skippedUpTo > 0 && !matches.isEmpty()
+                && !getCancelled().getAsBoolean()) {
+            try (final ReadableByteChannel again = reopen.open()) {
+                cursor.resolve(again);
+            }
+        }
+        matches.trim();
+        return matches;
+    }
+
+    /**
+     * Reads the whole channel into a pooled direct buffer and searches in it
+     *
+     * @param channel the channel of a file not bigger than the buffer
+     * @param matches the matches to add to
+     * @throws IOException if the channel could not be read
+     */
+    private void findSmall(final FileChannel channel, final FileMatches matches) throws IOException {
+        final ByteBuffer pooled = BUFFERS.poll();
+        final ByteBuffer buffer = Objects.isNull(pooled) ? ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE) : pooled;
+        try {
+            buffer.clear();
+            int read = 0;
+            while (read >= 0 && buffer.hasRemaining()) {
+                read = channel.read(buffer);
+            }
+            final int sample = Math.min(buffer.position(), PathFilter.SAMPLE_SIZE);
+            if (isSkipBinary() && PathFilter.looksBinary(buffer, 0, sample)) {
+                matches.markBinary();
+                return;
+            }
+            matches.setEncoding(getQuery().detect(buffer, 0, sample));
+            matches.addScanned(buffer.position());
+            collect(buffer, 0, 0, buffer.position(), true, cursor(matches));
+        } finally {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    /**
+     * Reads the first bytes of a large file into a pooled buffer to tell whether it is binary
+     * and to detect its encoding
+     *
+     * @param channel the channel to check
+     * @param matches the matches to set the encoding of
+     * @return false if the file looks binary and should be skipped
+     * @throws IOException if the channel could not be read
+     */
+    private boolean inspect(final FileChannel channel, final FileMatches matches) throws IOException {
+        if (!isSkipBinary() && !getQuery().isDetecting()) {
+            return true;
+        }
+        final ByteBuffer pooled = BUFFERS.poll();
+        final ByteBuffer buffer = Objects.isNull(pooled) ? ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE) : pooled;
+        try {
+            buffer.clear().limit(PathFilter.SAMPLE_SIZE);
+            int read = 0;
+            while (read >= 0 && buffer.hasRemaining()) {
+                read = channel.read(buffer, buffer.position());
+            }
+            if (isSkipBinary() && PathFilter.looksBinary(buffer, 0, buffer.position())) {
+                return false;
+            }
+            matches.setEncoding(getQuery().detect(buffer, 0, buffer.position()));
+            return true;
+        } finally {
+            BUFFERS.offer(buffer);
+        }
+    }
+
+    /**
+     * Maps the channel window by window and searches in every window step by step.
+     * Windows and steps overlap by the pattern length minus one so no match is lost on the border.
+     *
+     * @param channel the channel to search in
+     * @param size    the channel size
+     * @param cursor  the search state
+     * @throws IOException if the channel could not be mapped
+     */
+    private void findMapped(final FileChannel channel, final long size, final Cursor cursor) throws IOException {
+        final EntryMessage m = log.isTraceEnabled()
+                ? log.traceEntry("findMapped(channel = {}, size = {})", channel, size) : null;
+        final int overlap = Math.max(cursor.matcher.maxLength() - 1, 0);
+        long position = 0;
+        long scanned = 0;
+        try {
+            while (position < size) {
+                final int length = (int) Math.min(MAX_MAP_SIZE, size - position);
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                for (int start = 0; start < length; start += STEP_SIZE) {
+                    if (getCancelled().getAsBoolean() || cursor.isFull()) {
+                        return;
+                    }
+                    final int end = (int) Math.min((long) start + STEP_SIZE + overlap, length);
+                    collect(buffer, position, start, end, position + end >= size, cursor);
+                    scanned = position + end;
+                }
+                if (position + length >= size) {
+                    break;
+                }
+                position += length - overlap;
+            }
+        } finally {
+            cursor.matches.addScanned(scanned);
+            log.traceExit(m);
+        }
+    }
+
+    /**
+     * Splits the file into ranges scanned in parallel and appends their matches in the file order.
+     * There are a few ranges per split thread, so a range which takes longer does not hold the others up.
+     * Once the limit is reached the ranges not joined yet are stopped.
+     * The ranges count their lines only up to their last match, the rest of a range is counted on the split pool
+     * when a later range has matches and needs the number of lines before it.
+     *
+     * @param channel the channel to search in
+     * @param size    the channel size
+     * @param matches the matches to append to
+     * @throws IOException if a range could not be mapped or counted, the other ranges are stopped then
+     */
+    private void findRanges(final FileChannel channel, final long size, final FileMatches matches)
+            throws IOException {
+        final EntryMessage m = log.isTraceEnabled()
+                ? log.traceEntry("findRanges(channel = {}, size = {})", channel, size) : null;
+        final QueryMatcher matcher = getQuery().matcher(matches.getEncoding());
+        final int overlap = Math.max(matcher.maxLength() - 1, 0);
+        final long unit = matches.getEncoding().unitSize();
+        final int parallelism = ScanScheduler.get().getSplitPool().getParallelism();
+        final long rangeSize = Math.max(MIN_RANGE_SIZE,
+                Math.min(MAX_MAP_SIZE / 2, size / ((long) parallelism * RANGES_PER_THREAD) + unit)) / unit * unit;
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final BooleanSupplier stop = () -> stopped.get() || getCancelled().getAsBoolean();
+        final List<ForkJoinTask<Range>> tasks = new ArrayList<>();
+        for (long start = 0; start < size; start += rangeSize) {
+            final long from = start;
+            final long to = Math.min(start + rangeSize, size);
+            tasks.add(ScanScheduler.get().getSplitPool().submit(
+                    () -> findRange(channel, size, from, to, overlap, matches, stop)
+            ));
+        }
+        try {
+            joinRanges(tasks, matches, stopped, stop);
+        } finally {
+            stopped.set(true);
+        }
+        log.traceExit(m);
+    }
+
+    /**
+     * Appends the matches of the ranges in the file order counting the lines before them
+     *
+     * @param tasks   the scans of the ranges in the file order
+     * @param matches the matches to append to
+     * @param stopped set once the limit is reached to stop the ranges not joined yet
+     * @param stop    tells whether the ranges are stopped or the scan is cancelled
+     * @throws IOException if a range could not be mapped or counted
+     */
+    private void joinRanges(final List<ForkJoinTask<Range>> tasks, final FileMatches matches,
+                            final AtomicBoolean stopped, final BooleanSupplier stop) throws IOException {
+        final List<Range> uncounted = new ArrayList<>();
+        int linesBefore = 0;
+        long lineTail = 0;
+        for (final ForkJoinTask<Range> task : tasks) {
+            if (stop.getAsBoolean() || matches.isTruncated()) {
+                stopped.set(true);
+                task.cancel(false);
+                task.quietlyJoin();
+                if (task.isCompletedNormally()) {
+                    matches.addScanned(task.getRawResult().scanned);
+                }
+                continue;
+            }
+            final Range range = join(task);
+            matches.addScanned(range.scanned);
+            if (getCancelled().getAsBoolean()) {
+                continue;
+            }
+            if (!range.cursor.matches.isEmpty()) {
+                final List<ForkJoinTask<Range>> counts = new ArrayList<>();
+                for (final Range previous : uncounted) {
+                    counts.add(ScanScheduler.get().getSplitPool().submit(previous::finish));
+                }
+                for (final ForkJoinTask<Range> count : counts) {
+                    final Range previous = join(count);
+                    linesBefore += previous.lineFeeds();
+                    lineTail = previous.lineFeeds() > 0 ? previous.lineTail() : lineTail + previous.lineTail();
+                }
+                uncounted.clear();
+                matches.append(range.cursor.matches, 0, linesBefore, lineTail);
+            }
+            uncounted.add(range);
+        }
+    }
+
+    /**
+     * Waits for the range, the split pool wraps the exceptions of the range into unchecked ones
+     *
+     * @param task the scan or the line count of the range
+     * @return the range
+     * @throws IOException if the range could not be mapped or counted
+     */
+    private static Range join(final ForkJoinTask<Range> task) throws IOException {
+        try {
+            return task.join();
+        } catch (final RuntimeException err) {
+            for (Throwable cause = err; Objects.nonNull(cause); cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw err;
+        }
+    }
+
+    /**
+     * Maps the range together with the overlap on both sides and searches in it step by step.
+     * A match is reported by the range it starts in, the bytes before the range let a regular expression
+     * see the beginning of the line crossing the border.
+     * The lines and columns are counted from the range start.
+     *
+     * @param channel the channel to search in
+     * @param size    the channel size
+     * @param start   the offset of the first byte of the range
+     * @param end     the offset of the first byte after the range
+     * @param overlap the number of bytes mapped around the range
+     * @param file    the matches of the whole file providing the path and the limit
+     * @param stop    tells whether the range is not needed any more
+     * @return the matches, the line feeds and the number of searched bytes of the range
+     * @throws IOException if the range could not be mapped
+     */
+    private Range findRange(final FileChannel channel, final long size, final long start, final long end,
+                            final int overlap, final FileMatches file, final BooleanSupplier stop) throws IOException {
+        final EntryMessage m = log.isTraceEnabled()
+                ? log.traceEntry("findRange(start = {}, end = {})", start, end) : null;
+        final long base = Math.max(start - overlap, 0);
+        final int mapped = (int) (Math.min(end + overlap, size) - base);
+        final int length = (int) (end - base);
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, mapped);
+        final Cursor cursor = new Cursor(new FileMatches(file.getPath(), file.getLimit()), file.getEncoding(),
+                getQuery().matcher(file.getEncoding()), start, end);
+        int scanned = 0;
+        for (int step = (int) (start - base); step < length && !cursor.isFull(); step += STEP_SIZE) {
+            if (stop.getAsBoolean()) {
+                break;
+            }
+            final int to = (int) Math.min((long) step + STEP_SIZE + overlap, mapped);
+            collect(buffer, base, step, to, base + to >= size, cursor);
+            scanned = (int) Math.min(to, length) - (int) (start - base);
+        }
+        return log.traceExit(m, new Range(cursor, buffer, base, length, scanned));
+    }
+
+    /**
+     * Adds the matches found in the part of the buffer to the cursor
+     *
+     * @param buffer   the buffer to search in
+     * @param base     the file offset of the first buffer byte
+     * @param from     the first buffer index to check (inclusive)
+     * @param to       the last buffer index to check (exclusive)
+     * @param textEnds whether the data ends at the last buffer index, otherwise the next part is searched later
+     * @param cursor   the search state
+     * @throws IOException if the bytes before the buffer could not be mapped to count their lines
+     */
+    private void collect(final ByteBuffer buffer, final long base, final int from, final int to,
+                         final boolean textEnds, final Cursor cursor) throws IOException {
+        int start = (int) Math.max(cursor.nextStart - base, from);
+        while (!cursor.isFull()) {
+            final long match = cursor.matcher.find(buffer, start, to, textEnds);
+            if (match < 0) {
+                return;
+            }
+            final int hit = QueryMatcher.start(match);
+            if (base + hit >= cursor.end) {
+                return;
+            }
+            cursor.countLines(buffer, base, hit);
+            cursor.matches.add(base + hit, cursor.line, (int) (base + hit - cursor.lineStart) + 1);
+            start = Math.max(QueryMatcher.end(match), hit + 1);
+            cursor.nextStart = base + start;
+        }
+    }
+
+    /**
+     * Creates the search state of the whole file
+     *
+     * @param matches the matches of the file with its encoding detected
+     * @return the state using the query compiled for the encoding
+     */
+    private Cursor cursor(final FileMatches matches) {
+        return new Cursor(matches, matches.getEncoding(), getQuery().matcher(matches.getEncoding()));
+    }
+
+    /**
+     * Search state carried between buffers of the same file or range
+     */
+    @RequiredArgsConstructor
+    private static class Cursor {
+        private final FileMatches matches;
+        private final TextEncoding encoding;
+        private final QueryMatcher matcher;
+        private long nextStart = 0;
+        private long countedUpTo = 0;
+        private long lineStart = 0;
+        private int line = 1;
+        private long end = Long.MAX_VALUE;
+        private FileChannel file = null;
+        private long skippedUpTo = 0;
+
+        /**
+         * Creates the state of a range search, matches starting after the range are ignored
+         *
+         * @param matches  the matches of the range
+         * @param encoding the encoding of the file
+         * @param matcher  the query compiled for the encoding
+         * @param start    the offset of the first byte of the range
+         * @param end      the offset of the first byte after the range
+         */
+        Cursor(final FileMatches matches, final TextEncoding encoding, final QueryMatcher matcher, final long start,
+               final long end) {
+            this(matches, encoding, matcher);
+            this.nextStart = start;
+            this.countedUpTo = start;
+            this.lineStart = start;
+            this.end = end;
+        }
+
+        /**
+         * Tells whether enough matches have been found
+         *
+         * @return true if the search should stop
+         */
+        boolean isFull() {
+            return matches.isTruncated();
+        }
+
+        /**
+         * Lets the cursor map the bytes before the current window again when their lines are needed
+         *
+         * @param channel the file being searched
+         * @return this cursor
+         */
+        Cursor mappedFrom(final FileChannel channel) {
+            this.file = channel;
+            return this;
+        }
+
+        /**
+         * Counts the line feeds between the last counted offset and the buffer index remembering the last line start.
+         * The uncounted bytes before the buffer are mapped again from the file, the lines of a stream are counted
+         * from the buffer start and corrected by {@link #resolve(ReadableByteChannel)} later.
+         *
+         * @param buffer the buffer containing the index
+         * @param base   the file offset of the first buffer byte
+         * @param to     the buffer index to count up to (exclusive)
+         * @throws IOException if the bytes before the buffer could not be mapped
+         */
+        void countLines(final ByteBuffer buffer, final long base, final int to) throws IOException {
+            if (countedUpTo < base) {
+                if (Objects.isNull(file)) {
+                    skippedUpTo = base;
+                    lineStart = base;
+                    countedUpTo = base;
+                }
+                while (countedUpTo < base) {
+                    final long from = countedUpTo;
+                    final int length = (int) Math.min(MAX_MAP_SIZE, base - from);
+                    countLines(file.map(FileChannel.MapMode.READ_ONLY, from, length), from, length);
+                }
+            }
+            for (int i = (int) (countedUpTo - base); i < to; i++) {
+                if (buffer.get(i) == '\n' && encoding.isLineFeed(buffer, i)) {
+                    line++;
+                    lineStart = base + i + encoding.getLineFeedTail();
+                }
+            }
+            countedUpTo = Math.max(countedUpTo, base + to);
+        }
+
+        /**
+         * Counts the lines of the skipped beginning of a stream and moves the found matches down by them.
+         * The matches on the first line counted after the skipped bytes get their columns from the real line start.
+         *
+         * @param channel the stream read again from its beginning
+         * @throws IOException if the stream could not be read
+         */
+        void resolve(final ReadableByteChannel channel) throws IOException {
+            final Cursor skipped = new Cursor(matches, encoding, matcher);
+            final ByteBuffer buffer = ByteBuffer.allocate(DIRECT_BUFFER_SIZE);
+            long base = 0;
+            int read = 0;
+            while (read >= 0 && base < skippedUpTo) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), skippedUpTo - base));
+                while (read >= 0 && buffer.hasRemaining()) {
+                    read = channel.read(buffer);
+                }
+                skipped.countLines(buffer, base, buffer.position());
+                base += buffer.position();
+            }
+            for (int i = 0; i < matches.getCount(); i++) {
+                if (matches.getLines()[i] == 1) {
+                    matches.locate(i, 1, (int) (matches.getOffsets()[i] - skipped.lineStart) + 1);
+                }
+                matches.locate(i, matches.getLines()[i] + skipped.line - 1, matches.getColumns()[i]);
+            }
+        }
+    }
+
+    /**
+     * Opens the data of a stream again
+     */
+    @FunctionalInterface
+    interface ChannelSource {
+        /**
+         * Opens the data from its beginning
+         *
+         * @return the new channel, the caller closes it
+         * @throws IOException if the data could not be opened
+         */
+        ReadableByteChannel open() throws IOException;
+    }
+
+    /**
+     * The outcome of a single range of a large file, its lines are counted up to its last match
+     */
+    @RequiredArgsConstructor
+    private static class Range {
+        private final Cursor cursor;
+        private final MappedByteBuffer buffer;
+        private final long base;
+        private final int length;
+        private final int scanned;
+
+        /**
+         * Counts the lines after the last match, only needed when a later range has matches
+         *
+         * @return this range
+         * @throws IOException never, the range is mapped already
+         */
+        Range finish() throws IOException {
+            cursor.countLines(buffer, base, length);
+            return this;
+        }
+
+        /**
+         * Gets the number of line feeds in the range, it must have been finished
+         *
+         * @return the number of line feeds
+         */
+        int lineFeeds() {
+            return cursor.line - 1;
+        }
+
+        /**
+         * Gets the number of bytes after the last line feed of the range, it must have been finished
+         *
+         * @return the length of the unfinished last line
+         */
+        long lineTail() {
+            return cursor.end - cursor.lineStart;
+        }
+    }
+}
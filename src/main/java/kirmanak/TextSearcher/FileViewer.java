@@ -0,0 +1,207 @@
+package kirmanak.TextSearcher;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.util.Duration;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Shows a file of any size. Only the visible lines are decoded by the cells of the ListView,
+ * the line count grows while the {@link LineIndex} is being built in the background.
+ * The occurrences of the query are highlighted by the cells and can be walked through with the buttons.
+ */
+@Log4j2
+@Getter
+class FileViewer extends BorderPane {
+    private static final double CELL_SIZE = 18;
+    private static final Duration REFRESH_INTERVAL = Duration.millis(200);
+
+    private final LineIndex index;
+    private final LinePages pages;
+    private final MatchNavigator navigator;
+    private final LineList lines = new LineList();
+    private final ListView<Integer> listView = new ListView<>(lines);
+    private final Label statusLabel = new Label();
+    private final TextField lineField = new TextField();
+    private final Label matchLabel = new Label();
+    private final Timeline refresher = new Timeline(new KeyFrame(REFRESH_INTERVAL, event -> refresh()));
+    private volatile boolean closed = false;
+    private int pendingLine = -1;
+    private long pendingOffset = -1;
+
+    FileViewer(final LineIndex index, final QueryMatcher matcher, final FileMatches matches) {
+        final EntryMessage m = log.traceEntry(
+                "FileViewer(index = {}, matcher = {}, matches = {})", index, matcher, matches
+        );
+        this.index = index;
+        pages = new LinePages(index);
+        navigator = new MatchNavigator(index.getFile(), matcher, matches);
+        listView.setFixedCellSize(CELL_SIZE);
+        final Pattern highlighted = matcher.textPattern();
+        listView.setCellFactory(view -> new LineCell(pages, highlighted));
+        lineField.setPromptText("Go to line");
+        lineField.setOnAction(event -> onLineRequest());
+        final Button previousButton = new Button("Previous");
+        previousButton.setOnAction(event -> previousMatch());
+        final Button nextButton = new Button("Next");
+        nextButton.setOnAction(event -> nextMatch());
+        final HBox toolBar = new HBox(8, lineField, previousButton, nextButton, matchLabel, statusLabel);
+        toolBar.setPadding(new Insets(4));
+        setTop(toolBar);
+        setCenter(listView);
+        refresher.setCycleCount(Timeline.INDEFINITE);
+        refresher.play();
+        ScanScheduler.get().executor(ScanMode.POOL).execute(() -> index.build(this::isClosed));
+        log.traceExit(m);
+    }
+
+    /**
+     * Scrolls to the line, waits for the index if the line is not indexed yet
+     *
+     * @param line the line number starting from 0
+     */
+    void jumpToLine(final int line) {
+        final EntryMessage m = log.traceEntry("jumpToLine(line = {})", line);
+        if (line < lines.size()) {
+            pendingLine = -1;
+            listView.scrollTo(Math.max(0, line - 1));
+            listView.getSelectionModel().clearAndSelect(line);
+        } else if (!index.isComplete()) {
+            pendingLine = line;
+        }
+        log.traceExit(m);
+    }
+
+    /**
+     * Scrolls to the line containing the offset, waits for the index if the offset is not indexed yet
+     *
+     * @param offset the offset from the beginning of the file
+     */
+    void jumpToOffset(final long offset) {
+        final EntryMessage m = log.traceEntry("jumpToOffset(offset = {})", offset);
+        if (offset < index.getIndexedBytes()) {
+            pendingOffset = -1;
+            jumpToLine(index.lineOf(offset));
+        } else {
+            pendingOffset = offset;
+        }
+        log.traceExit(m);
+    }
+
+    /**
+     * Scrolls to the following occurrence of the query
+     */
+    void nextMatch() {
+        navigate(navigator::next);
+    }
+
+    /**
+     * Scrolls to the preceding occurrence of the query
+     */
+    void previousMatch() {
+        navigate(navigator::previous);
+    }
+
+    /**
+     * Moves to another occurrence of the query, the file may be scanned so it is done in the background
+     *
+     * @param move the navigator method choosing the occurrence
+     */
+    private void navigate(final Supplier<OptionalLong> move) {
+        final EntryMessage m = log.traceEntry("navigate(move = {})", move);
+        CompletableFuture.supplyAsync(move, ScanScheduler.get().executor(ScanMode.POOL))
+                .thenAcceptAsync(offset -> {
+                    offset.ifPresent(this::jumpToOffset);
+                    matchLabel.setText(navigator.describe());
+                }, Platform::runLater);
+        log.traceExit(m);
+    }
+
+    /**
+     * Stops indexing, must be called when the viewer is not shown anymore
+     */
+    void close() {
+        final EntryMessage m = log.traceEntry("close()");
+        closed = true;
+        refresher.stop();
+        log.traceExit(m);
+    }
+
+    /**
+     * Publishes the lines indexed since the previous refresh
+     */
+    private void refresh() {
+        final boolean complete = index.isComplete();
+        lines.grow(index.getLineCount());
+        statusLabel.setText(String.format("%,d lines%s", lines.size(), complete ? "" : ", indexing…"));
+        if (pendingOffset >= 0) {
+            jumpToOffset(pendingOffset);
+        }
+        if (pendingLine >= 0) {
+            jumpToLine(pendingLine);
+        }
+        if (complete) {
+            refresher.stop();
+        }
+    }
+
+    /**
+     * Handles the line number entered by the user
+     */
+    private void onLineRequest() {
+        final EntryMessage m = log.traceEntry("onLineRequest()");
+        try {
+            jumpToLine(Math.max(0, Integer.parseInt(lineField.getText().trim()) - 1));
+        } catch (final NumberFormatException err) {
+            log.error(m, err);
+        }
+        log.traceExit(m);
+    }
+
+    /**
+     * Line numbers of the file, the items are not stored
+     */
+    private static class LineList extends ObservableListBase<Integer> {
+        private int size = 0;
+
+        @Override
+        public Integer get(final int index) {
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Adds the lines up to the new size
+         *
+         * @param newSize the number of indexed lines
+         */
+        void grow(final int newSize) {
+            if (newSize > size) {
+                beginChange();
+                nextAdd(size, newSize);
+                size = newSize;
+                endChange();
+            }
+        }
+    }
+}
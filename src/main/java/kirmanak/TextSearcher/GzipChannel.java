@@ -0,0 +1,315 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses the members of a gzip file starting at any member boundary.
+ * Inflaters and input buffers are pooled, nothing is written to the disk.
+ * The channel may be told to stop at a member boundary, then it counts the bytes and line feeds
+ * produced before the boundary and continues into the following member for a few more bytes,
+ * so a match crossing the boundary is not lost by the part of the file scanned before it.
+ */
+@Log4j2
+@Getter
+class GzipChannel implements ReadableByteChannel {
+    private static final int INPUT_SIZE = 64 * 1024;
+    private static final int FLAG_HCRC = 2;
+    private static final int FLAG_EXTRA = 4;
+    private static final int FLAG_NAME = 8;
+    private static final int FLAG_COMMENT = 16;
+    private static final int TRAILER_SIZE = 8;
+    private static final Queue<Inflater> INFLATERS = new ConcurrentLinkedQueue<>();
+    private static final Queue<ByteBuffer> INPUTS = new ConcurrentLinkedQueue<>();
+
+    private final FileChannel file;
+    private final long stopAt;
+    private final Inflater inflater;
+    private final ByteBuffer input;
+    private long inputOffset;
+    private long extraLeft;
+    private boolean inMember = false;
+    private boolean eof = false;
+    private boolean open = true;
+    private long produced = 0;
+    private long boundaryOutput = -1;
+    private long boundary = -1;
+    private int lineFeeds = 0;
+    private long lineTail = 0;
+
+    /**
+     * Creates a channel decompressing everything from the member starting at the offset to the end of the file
+     *
+     * @param file  the gzip file, positional reads are used so the channel may be shared
+     * @param start the offset of a member header
+     */
+    GzipChannel(final FileChannel file, final long start) {
+        this(file, start, Long.MAX_VALUE, 0);
+    }
+
+    /**
+     * Creates a channel decompressing the members from the offset up to the boundary
+     *
+     * @param file   the gzip file, positional reads are used so the channel may be shared
+     * @param start  the offset of a member header
+     * @param stopAt the offset of the member header the channel stops at
+     * @param extra  the number of bytes to produce after the boundary
+     */
+    GzipChannel(final FileChannel file, final long start, final long stopAt, final int extra) {
+        this.file = file;
+        this.stopAt = stopAt;
+        this.extraLeft = extra;
+        this.inputOffset = start;
+        final Inflater pooledInflater = INFLATERS.poll();
+        this.inflater = Objects.isNull(pooledInflater) ? new Inflater(true) : pooledInflater;
+        final ByteBuffer pooledInput = INPUTS.poll();
+        this.input = Objects.isNull(pooledInput) ? ByteBuffer.allocateDirect(INPUT_SIZE) : pooledInput;
+        input.clear().limit(0);
+    }
+
+    /**
+     * Tells whether the channel stopped exactly at the requested boundary
+     *
+     * @return false if a member crossed the boundary, so the boundary was not a member start
+     */
+    boolean isAligned() {
+        return boundary == stopAt || (stopAt == Long.MAX_VALUE && eof);
+    }
+
+    @Override
+    public int read(final ByteBuffer dst) throws IOException {
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        while (!eof) {
+            if (boundaryOutput >= 0 && extraLeft <= 0) {
+                eof = true;
+                break;
+            }
+            if (!inMember && !startMember()) {
+                eof = true;
+                break;
+            }
+            final int limit = dst.limit();
+            if (boundaryOutput >= 0) {
+                dst.limit((int) Math.min(limit, dst.position() + extraLeft));
+            }
+            final int start = dst.position();
+            final int read;
+            try {
+                read = inflate(dst);
+            } finally {
+                dst.limit(limit);
+            }
+            if (read > 0) {
+                account(dst, start, read);
+                return read;
+            }
+            if (inflater.finished()) {
+                finishMember();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Inflates into the buffer loading more input when needed
+     *
+     * @param dst the buffer to fill
+     * @return the number of produced bytes, 0 if the member has finished
+     * @throws IOException if the data is corrupted or truncated
+     */
+    private int inflate(final ByteBuffer dst) throws IOException {
+        try {
+            while (true) {
+                if (!dst.hasRemaining()) {
+                    return 0;
+                }
+                final int read = inflater.inflate(dst);
+                if (read > 0 || inflater.finished()) {
+                    return read;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Unsupported preset dictionary in " + file);
+                }
+                if (!fill()) {
+                    throw new IOException("Unexpected end of the gzip data in " + file);
+                }
+                inflater.setInput(input);
+            }
+        } catch (final DataFormatException err) {
+            throw new IOException(err);
+        }
+    }
+
+    /**
+     * Counts the produced bytes and the line feeds produced before the boundary
+     *
+     * @param dst   the filled buffer
+     * @param start the index of the first produced byte
+     * @param read  the number of produced bytes
+     */
+    private void account(final ByteBuffer dst, final int start, final int read) {
+        produced += read;
+        if (boundaryOutput >= 0) {
+            extraLeft -= read;
+            return;
+        }
+        for (int i = start; i < start + read; i++) {
+            if (dst.get(i) == '\n') {
+                lineFeeds++;
+                lineTail = 0;
+            } else {
+                lineTail++;
+            }
+        }
+    }
+
+    /**
+     * Parses the next member header and prepares the inflater
+     *
+     * @return false if there are no more members to read
+     * @throws IOException if the file could not be read
+     */
+    private boolean startMember() throws IOException {
+        if (!ensure(10)) {
+            return false;
+        }
+        if ((input.get(input.position()) & 0xFF) != 0x1f || (input.get(input.position() + 1) & 0xFF) != 0x8b
+                || input.get(input.position() + 2) != 8) {
+            log.warn("startMember(): ignoring trailing data of {} at {}", file, inputOffset + input.position());
+            return false;
+        }
+        final int flags = input.get(input.position() + 3) & 0xFF;
+        input.position(input.position() + 10);
+        if ((flags & FLAG_EXTRA) != 0) {
+            require(2);
+            final int length = (input.get() & 0xFF) | (input.get() & 0xFF) << 8;
+            skip(length);
+        }
+        if ((flags & FLAG_NAME) != 0) {
+            skipString();
+        }
+        if ((flags & FLAG_COMMENT) != 0) {
+            skipString();
+        }
+        if ((flags & FLAG_HCRC) != 0) {
+            skip(2);
+        }
+        inflater.reset();
+        inflater.setInput(input);
+        inMember = true;
+        return true;
+    }
+
+    /**
+     * Skips the trailer of the finished member and checks whether the boundary has been reached
+     *
+     * @throws IOException if the file could not be read
+     */
+    private void finishMember() throws IOException {
+        inMember = false;
+        skip(TRAILER_SIZE);
+        final long memberEnd = inputOffset + input.position();
+        if (boundaryOutput < 0 && memberEnd >= stopAt) {
+            boundary = memberEnd;
+            boundaryOutput = produced;
+        }
+    }
+
+    /**
+     * Skips a zero-terminated header field
+     *
+     * @throws IOException if the file ended inside the field
+     */
+    private void skipString() throws IOException {
+        do {
+            require(1);
+        } while (input.get() != 0);
+    }
+
+    /**
+     * Skips the input bytes
+     *
+     * @param length the number of bytes to skip
+     * @throws IOException if the file ended before
+     */
+    private void skip(final int length) throws IOException {
+        int left = length;
+        while (left > 0) {
+            require(1);
+            final int step = Math.min(left, input.remaining());
+            input.position(input.position() + step);
+            left -= step;
+        }
+    }
+
+    /**
+     * Makes sure enough input is loaded
+     *
+     * @param length the number of bytes needed
+     * @throws IOException if the file ended before
+     */
+    private void require(final int length) throws IOException {
+        if (!ensure(length)) {
+            throw new IOException("Unexpected end of the gzip header in " + file);
+        }
+    }
+
+    /**
+     * Loads input until enough bytes are available
+     *
+     * @param length the number of bytes needed
+     * @return false if the file ended before
+     * @throws IOException if the file could not be read
+     */
+    private boolean ensure(final int length) throws IOException {
+        while (input.remaining() < length) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the unread input to the beginning of the buffer and reads more after it
+     *
+     * @return false if the file has ended
+     * @throws IOException if the file could not be read
+     */
+    private boolean fill() throws IOException {
+        inputOffset += input.position();
+        input.compact();
+        final int read = file.read(input, inputOffset + input.position());
+        input.flip();
+        return read > 0;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Returns the inflater and the buffer to the pools, the file is not closed
+     */
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            INFLATERS.offer(inflater);
+            INPUTS.offer(input);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package kirmanak.TextSearcher;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Keeps the opened indexes up to date. The first request walks the root folder and starts watching it,
+ * later requests re-read only the files reported by the {@link IndexWatcher}.
+ * If the root folder could not be watched, e.g. the inotify watches are exhausted, every request walks it instead.
+ * At most "textsearcher.openIndexes" indexes are kept open, the least recently used ones are closed.
+ * Every index is built and updated under its own lock, so the searches of other indexes do not wait for it.
+ */
+@Log4j2
+class IndexManager {
+    private static final int MAX_INDEXES = Integer.getInteger("textsearcher.openIndexes", 16);
+    private static final LinkedHashMap<Path, Managed> INDEXES = new LinkedHashMap<>(16, 0.75f, true);
+
+    private IndexManager() {
+    }
+
+    /**
+     * Gets the up-to-date index of the root folder, building it if it does not exist
+     *
+     * @param root      the search root folder
+     * @param extension the extension of the indexed files or the include globs, see {@link PathFilter#selection}
+     * @return the index reflecting the current content of the root folder
+     * @throws IOException if the index could not be read, built or updated
+     */
+    static TrigramIndex get(final Path root, final String extension) throws IOException {
+        final EntryMessage m = log.traceEntry("get(root = {}, extension = {})", root, extension);
+        final Managed managed = managed(TrigramIndex.indexFile(root, extension));
+        final TrigramIndexBuilder builder = new TrigramIndexBuilder(root, extension);
+        synchronized (managed) {
+            if (Objects.isNull(managed.index)) {
+                // watch first so nothing changed during the walk is missed
+                managed.watcher = watch(root);
+                if (managed.closed) {
+                    // evicted while starting to watch
+                    managed.close();
+                }
+                try {
+                    final Optional<TrigramIndex> stored = TrigramIndex.open(root, extension);
+                    managed.index = stored.isPresent() ? builder.update(stored.get()) : builder.build();
+                } catch (final IOException err) {
+                    if (Objects.nonNull(managed.watcher)) {
+                        managed.watcher.close();
+                        managed.watcher = null;
+                    }
+                    throw err;
+                }
+                return log.traceExit(m, managed.index);
+            }
+            final Optional<Set<Path>> changes = managed.closed || Objects.isNull(managed.watcher)
+                    ? Optional.empty() : managed.watcher.drainChanges();
+            if (!changes.isPresent()) {
+                managed.index = builder.update(managed.index);
+            } else if (!changes.get().isEmpty()) {
+                managed.index = builder.update(managed.index, changes.get());
+            }
+            return log.traceExit(m, managed.index);
+        }
+    }
+
+    /**
+     * Closes the watchers of every open index
+     */
+    static void closeAll() {
+        final EntryMessage m = log.traceEntry("closeAll()");
+        final List<Managed> closed;
+        synchronized (INDEXES) {
+            closed = new ArrayList<>(INDEXES.values());
+            INDEXES.clear();
+        }
+        closed.forEach(Managed::close);
+        log.traceExit(m);
+    }
+
+    /**
+     * Gets the holder of the index, an empty one if the index is not open yet.
+     * The least recently used indexes are closed if there are too many.
+     *
+     * @param key the index file
+     * @return the holder to lock before using it
+     */
+    private static Managed managed(final Path key) {
+        final List<Managed> evicted = new ArrayList<>();
+        final Managed managed;
+        synchronized (INDEXES) {
+            managed = INDEXES.computeIfAbsent(key, file -> new Managed());
+            final Iterator<Managed> iterator = INDEXES.values().iterator();
+            while (INDEXES.size() > MAX_INDEXES && iterator.hasNext()) {
+                evicted.add(iterator.next());
+                iterator.remove();
+            }
+        }
+        evicted.forEach(Managed::close);
+        return managed;
+    }
+
+    /**
+     * Starts watching the root folder
+     *
+     * @param root the search root folder
+     * @return the watcher or null if the folder could not be watched and has to be walked on every request
+     */
+    private static IndexWatcher watch(final Path root) {
+        try {
+            return new IndexWatcher(root);
+        } catch (final IOException err) {
+            log.warn("watch(root = {}): walking the folder on every search instead", root, err);
+            return null;
+        }
+    }
+
+    /**
+     * The index together with the watcher of its root folder
+     */
+    private static class Managed {
+        private volatile IndexWatcher watcher;
+        private volatile boolean closed = false;
+        private TrigramIndex index;
+
+        /**
+         * Stops watching the root folder without waiting for the index to be built or updated,
+         * a search still holding the index walks the folder on the next update
+         */
+        void close() {
+            closed = true;
+            final IndexWatcher current = watcher;
+            if (Objects.isNull(current)) {
+                return;
+            }
+            try {
+                current.close();
+            } catch (final IOException err) {
+                log.error("close()", err);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches every directory under the root and collects the changed files between two index updates.
+ * The collected set is swapped for an empty one when the changes are taken, so no change falls between the two.
+ */
+@Log4j2
+@Getter
+class IndexWatcher implements Runnable, Closeable {
+    private final Path root;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final AtomicReference<Set<Path>> changed = new AtomicReference<>(ConcurrentHashMap.newKeySet());
+    private final AtomicBoolean overflow = new AtomicBoolean(false);
+
+    IndexWatcher(final Path root) throws IOException {
+        final EntryMessage m = log.traceEntry("IndexWatcher(root = {})", root);
+        this.root = root;
+        this.watchService = root.getFileSystem().newWatchService();
+        try {
+            register(root);
+        } catch (final IOException err) {
+            // e.g. the inotify watches are exhausted, the registered directories are released
+            watchService.close();
+            throw err;
+        }
+        final Thread thread = new Thread(this, "IndexWatcher-" + root);
+        thread.setDaemon(true);
+        thread.start();
+        log.traceExit(m);
+    }
+
+    /**
+     * Takes the changes collected since the previous call
+     *
+     * @return the changed files or nothing if the changes were lost and the whole root has to be checked
+     */
+    Optional<Set<Path>> drainChanges() {
+        final EntryMessage m = log.traceEntry("drainChanges()");
+        final boolean lost = overflow.getAndSet(false);
+        final Set<Path> result = changed.getAndSet(ConcurrentHashMap.newKeySet());
+        return log.traceExit(m, lost ? Optional.empty() : Optional.of(result));
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final WatchKey key = watchService.take();
+                final Path directory = directories.get(key);
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    handle(directory, event);
+                }
+                if (!key.reset()) {
+                    directories.remove(key);
+                }
+            }
+        } catch (final InterruptedException err) {
+            Thread.currentThread().interrupt();
+        } catch (final ClosedWatchServiceException err) {
+            log.debug("run(): {} is closed", root);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    /**
+     * Records the event, new directories are registered and their content is treated as changed
+     *
+     * @param directory the watched directory
+     * @param event     the event in the directory
+     */
+    private void handle(final Path directory, final WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW || Objects.isNull(directory)) {
+            overflow.set(true);
+            return;
+        }
+        final Path path = directory.resolve((Path) event.context());
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                register(path);
+            } catch (final IOException err) {
+                log.error(err);
+                overflow.set(true);
+            }
+        } else if (event.kind() == ENTRY_DELETE && directories.containsValue(path)) {
+            // a removed directory does not report its files
+            overflow.set(true);
+        } else {
+            record(path);
+        }
+    }
+
+    /**
+     * Adds the file to the collected changes, again to the new set if the changes were taken meanwhile
+     *
+     * @param path the changed file
+     */
+    private void record(final Path path) {
+        Set<Path> current = changed.get();
+        current.add(path);
+        while (current != changed.get()) {
+            current = changed.get();
+            current.add(path);
+        }
+    }
+
+    /**
+     * Registers the directory and all its subdirectories, files found there are treated as changed
+     *
+     * @param start the directory to register
+     * @throws IOException if the directory could not be walked
+     */
+    private void register(final Path start) throws IOException {
+        final EntryMessage m = log.traceEntry("register(start = {})", start);
+        final boolean initial = start.equals(root);
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+                    throws IOException {
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (!initial) {
+                    record(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                log.error(exc);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        log.traceExit(m);
+    }
+}
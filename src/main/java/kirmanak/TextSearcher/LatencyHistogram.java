@@ -0,0 +1,99 @@
+package kirmanak.TextSearcher;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations counted in power of two buckets of microseconds, bucket i holds the durations below 2^i.
+ * Recording is a couple of LongAdder increments, so it can be done for every file from every thread.
+ * Percentiles are reported as the upper bound of their bucket, within a factor of two of the real value.
+ */
+class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds a duration
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void record(final long nanos) {
+        final long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0));
+        buckets[Math.min(Long.SIZE - Long.numberOfLeadingZeros(micros), BUCKETS - 1)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Gets the number of recorded durations
+     *
+     * @return the number of durations
+     */
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of the recorded durations
+     *
+     * @return the sum in nanoseconds
+     */
+    long totalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Gets the longest recorded duration
+     *
+     * @return the maximum in nanoseconds, 0 if nothing has been recorded
+     */
+    long maxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Estimates the duration the provided share of the recorded durations does not exceed
+     *
+     * @param quantile the share between 0 and 1
+     * @return the upper bound of the bucket containing the quantile in microseconds, 0 if nothing has been recorded
+     */
+    long percentileMicros(final double quantile) {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        final long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(1L << i, TimeUnit.NANOSECONDS.toMicros(maxNanos()));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Describes the distribution in milliseconds
+     *
+     * @return the median, the 99th percentile and the maximum
+     */
+    String describe() {
+        return String.format("p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                percentileMicros(0.5) / 1e3, percentileMicros(0.99) / 1e3, maxNanos() / 1e6);
+    }
+}
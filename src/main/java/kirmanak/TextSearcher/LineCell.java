@@ -0,0 +1,54 @@
+package kirmanak.TextSearcher;
+
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+import lombok.RequiredArgsConstructor;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shows a single line of the viewed file with its number.
+ * The matches of the query are highlighted only in the lines being shown.
+ */
+@RequiredArgsConstructor
+class LineCell extends ListCell<Integer> {
+    private static final String MATCH_STYLE = "-fx-background-color: gold;";
+
+    private final LinePages pages;
+    private final Pattern pattern;
+
+    @Override
+    protected void updateItem(final Integer item, final boolean empty) {
+        super.updateItem(item, empty);
+        setGraphic(null);
+        if (empty || item == null) {
+            setText(null);
+            return;
+        }
+        final String prefix = String.format("%6d  ", item + 1);
+        final String line = pages.line(item);
+        final Matcher matcher = pattern.matcher(line);
+        final TextFlow flow = new TextFlow(new Text(prefix));
+        int start = 0;
+        while (matcher.find()) {
+            if (matcher.end() == matcher.start()) {
+                continue;
+            }
+            flow.getChildren().add(new Text(line.substring(start, matcher.start())));
+            final Label match = new Label(matcher.group());
+            match.setStyle(MATCH_STYLE);
+            flow.getChildren().add(match);
+            start = matcher.end();
+        }
+        if (start == 0) {
+            setText(prefix + line);
+            return;
+        }
+        flow.getChildren().add(new Text(line.substring(start)));
+        setText(null);
+        setGraphic(flow);
+    }
+}
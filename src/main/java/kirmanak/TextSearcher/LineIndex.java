@@ -0,0 +1,167 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Sparse index of line starts of a mapped file. Only every {@link #CHECKPOINT_INTERVAL}-th line start
+ * is stored, so the memory use is bounded and finding any line needs to skip at most that many lines.
+ * The index is built by {@link #build(BooleanSupplier)} in the background and can be used while it grows.
+ * The line feeds are recognized in the {@link TextEncoding} the file has been found in.
+ */
+@Log4j2
+@Getter
+class LineIndex {
+    static final int CHECKPOINT_INTERVAL = 64;
+    private static final int PUBLISH_INTERVAL = 16 * 1024;
+
+    private final MappedFile file;
+    private final TextEncoding encoding;
+    private volatile long[] checkpoints = new long[1024];
+    private volatile int lineCount = 0;
+    private volatile long indexedBytes = 0;
+    private volatile boolean complete = false;
+
+    LineIndex(final MappedFile file) {
+        this(file, TextEncoding.UTF_8);
+    }
+
+    LineIndex(final MappedFile file, final TextEncoding encoding) {
+        this.file = file;
+        this.encoding = encoding;
+    }
+
+    /**
+     * Counts the lines of the whole file recording the checkpoints
+     *
+     * @param cancelled tells whether the viewer has been closed
+     */
+    void build(final BooleanSupplier cancelled) {
+        final EntryMessage m = log.traceEntry("build(cancelled = {})", cancelled);
+        long[] current = checkpoints;
+        int lines = 0;
+        long lineStart = 0;
+        final ByteBuffer[] chunks = file.getChunks();
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            final long base = (long) chunk << MappedFile.CHUNK_BITS;
+            final int limit = chunks[chunk].limit();
+            for (int i = 0; i < limit; i++) {
+                if (chunks[chunk].get(i) != '\n' || !encoding.isLineFeed(chunks[chunk], i)) {
+                    continue;
+                }
+                if (lines % CHECKPOINT_INTERVAL == 0) {
+                    current = checkpoint(current, lines, lineStart);
+                }
+                lines++;
+                lineStart = base + i + encoding.getLineFeedTail();
+                if (lines % PUBLISH_INTERVAL == 0) {
+                    if (cancelled.getAsBoolean()) {
+                        log.traceExit(m);
+                        return;
+                    }
+                    indexedBytes = lineStart;
+                    lineCount = lines;
+                }
+            }
+        }
+        if (lineStart < file.getSize()) {
+            if (lines % CHECKPOINT_INTERVAL == 0) {
+                checkpoint(current, lines, lineStart);
+            }
+            lines++;
+        }
+        indexedBytes = file.getSize();
+        lineCount = lines;
+        complete = true;
+        log.traceExit(m);
+    }
+
+    /**
+     * Stores the start of the line, the array is replaced when it has to grow
+     *
+     * @param current   the checkpoints array
+     * @param line      the line number divisible by the interval
+     * @param lineStart the offset of the line start
+     * @return the checkpoints array containing the new checkpoint
+     */
+    private long[] checkpoint(final long[] current, final int line, final long lineStart) {
+        final int index = line / CHECKPOINT_INTERVAL;
+        long[] result = current;
+        if (index == current.length) {
+            result = Arrays.copyOf(current, current.length * 2);
+        }
+        result[index] = lineStart;
+        if (result != current) {
+            checkpoints = result;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the offset of the line start, the line must be already indexed
+     *
+     * @param line the line number starting from 0
+     * @return the offset of the first byte of the line
+     */
+    long lineStart(final int line) {
+        // the checkpoints are published before the line count, so reading the count first makes them visible
+        final int count = lineCount;
+        final long[] current = checkpoints;
+        if (line >= count) {
+            throw new IllegalArgumentException("line " + line + " is not indexed yet, " + count + " lines are");
+        }
+        long offset = current[line / CHECKPOINT_INTERVAL];
+        for (int skip = line % CHECKPOINT_INTERVAL; skip > 0; skip--) {
+            offset = lineEnd(offset) + encoding.getLineFeedTail();
+        }
+        return offset;
+    }
+
+    /**
+     * Finds the line containing the offset, the offset must be below {@link #getIndexedBytes()}
+     *
+     * @param offset the offset from the beginning of the file
+     * @return the line number starting from 0
+     */
+    int lineOf(final long offset) {
+        // the checkpoints are published before the line count, so reading the count first makes them visible
+        final int count = lineCount;
+        final long[] current = checkpoints;
+        int low = 0;
+        int high = (count + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (current[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int line = low * CHECKPOINT_INTERVAL;
+        long end = lineEnd(current[low]);
+        while (end < offset) {
+            end = lineEnd(end + encoding.getLineFeedTail());
+            line++;
+        }
+        return line;
+    }
+
+    /**
+     * Finds the end of the line starting at the offset
+     *
+     * @param lineStart the offset of the line start
+     * @return the offset of the 0x0A byte of the line feed or the file size for the last line
+     */
+    long lineEnd(final long lineStart) {
+        long offset = lineStart;
+        while (offset < file.getSize() && !encoding.isLineFeed(file, offset)) {
+            offset++;
+        }
+        return offset;
+    }
+}
@@ -0,0 +1,77 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Decodes lines of the indexed file a page at a time and keeps the recently used pages.
+ * A page is the block of lines between two checkpoints of the {@link LineIndex}.
+ * The lines are decoded in the encoding of the index, the byte order mark is not shown.
+ */
+@Log4j2
+@Getter
+class LinePages {
+    private static final int CACHED_PAGES = 64;
+    private static final int MAX_LINE_BYTES = 16 * 1024;
+    private static final String BYTE_ORDER_MARK = "\uFEFF";
+
+    private final LineIndex index;
+    private final Map<Integer, String[]> pages = new LinkedHashMap<Integer, String[]>(CACHED_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Integer, String[]> eldest) {
+            return size() > CACHED_PAGES;
+        }
+    };
+
+    LinePages(final LineIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Gets the text of the line, very long lines are cut
+     *
+     * @param line the line number starting from 0, must be already indexed
+     * @return the line without the line terminator
+     */
+    String line(final int line) {
+        final int page = line / LineIndex.CHECKPOINT_INTERVAL;
+        String[] lines = pages.get(page);
+        if (Objects.isNull(lines) || Objects.isNull(lines[line % LineIndex.CHECKPOINT_INTERVAL])) {
+            lines = decode(page);
+            pages.put(page, lines);
+        }
+        return lines[line % LineIndex.CHECKPOINT_INTERVAL];
+    }
+
+    /**
+     * Decodes all lines of the page
+     *
+     * @param page the page number
+     * @return the decoded lines
+     */
+    private String[] decode(final int page) {
+        final EntryMessage m = log.isTraceEnabled() ? log.traceEntry("decode(page = {})", page) : null;
+        final int first = page * LineIndex.CHECKPOINT_INTERVAL;
+        final int count = Math.max(0, Math.min(LineIndex.CHECKPOINT_INTERVAL, index.getLineCount() - first));
+        final String[] result = new String[LineIndex.CHECKPOINT_INTERVAL];
+        final TextEncoding encoding = index.getEncoding();
+        long start = count > 0 ? index.lineStart(first) : 0;
+        for (int i = 0; i < count; i++) {
+            final long end = index.lineEnd(start);
+            final long contentEnd = end < index.getFile().getSize() ? end - encoding.getLineFeedHead() : end;
+            final int length = (int) Math.min(contentEnd - start, MAX_LINE_BYTES);
+            String line = new String(index.getFile().bytes(start, Math.max(length, 0)), encoding.getCharset());
+            if (contentEnd - start == length && line.endsWith("\r")) {
+                line = line.substring(0, line.length() - 1);
+            }
+            result[i] = first + i == 0 && line.startsWith(BYTE_ORDER_MARK) ? line.substring(1) : line;
+            start = end + encoding.getLineFeedTail();
+        }
+        return log.traceExit(m, result);
+    }
+}
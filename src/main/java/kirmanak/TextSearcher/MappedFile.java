@@ -0,0 +1,108 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only mapping of a whole file, files bigger than 2 GiB are mapped as several chunks.
+ * The content of an archive entry is inflated into a temporary file and mapped the same way.
+ */
+@Log4j2
+@Getter
+class MappedFile {
+    static final int CHUNK_BITS = 30;
+    private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+    private final Path path;
+    private final long size;
+    private final ByteBuffer[] chunks;
+
+    MappedFile(final Path path) throws IOException {
+        this(path, path);
+    }
+
+    /**
+     * Maps the content stored in another file, like an archive entry inflated into a temporary file
+     *
+     * @param path    the path the content is shown under
+     * @param content the file to map
+     * @throws IOException if the file could not be mapped
+     */
+    MappedFile(final Path path, final Path content) throws IOException {
+        final EntryMessage m = log.traceEntry("MappedFile(path = {}, content = {})", path, content);
+        this.path = path;
+        try (final FileChannel channel = FileChannel.open(content, StandardOpenOption.READ)) {
+            size = channel.size();
+            chunks = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long position = (long) i << CHUNK_BITS;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, 1L << CHUNK_BITS));
+            }
+        }
+        log.traceExit(m);
+    }
+
+    /**
+     * Reads a single byte
+     *
+     * @param offset the offset from the beginning of the file
+     * @return the byte at the offset
+     */
+    byte get(final long offset) {
+        return chunks[(int) (offset >>> CHUNK_BITS)].get((int) (offset & CHUNK_MASK));
+    }
+
+    /**
+     * Looks for the next occurrence of the pattern including the ones crossing the chunk borders
+     *
+     * @param matcher the pattern to look for
+     * @param from    the offset to start from
+     * @return the offset of the first occurrence or -1 if there is none
+     */
+    long indexOf(final QueryMatcher matcher, final long from) {
+        final EntryMessage m = log.traceEntry("indexOf(matcher = {}, from = {})", matcher, from);
+        final int overlap = Math.max(matcher.maxLength() - 1, 0);
+        for (int chunk = (int) (from >>> CHUNK_BITS); chunk < chunks.length; chunk++) {
+            final long base = (long) chunk << CHUNK_BITS;
+            final int start = (int) Math.max(from - base, 0);
+            final long end = base + chunks[chunk].limit();
+            final long found = matcher.find(chunks[chunk], start, chunks[chunk].limit(), end >= size);
+            if (found >= 0) {
+                return log.traceExit(m, base + QueryMatcher.start(found));
+            }
+            if (overlap > 0 && end < size) {
+                final long bridgeStart = Math.max(end - overlap, from);
+                final int bridgeLength = (int) (Math.min(end + overlap, size) - bridgeStart);
+                final ByteBuffer bridge = ByteBuffer.wrap(bytes(bridgeStart, bridgeLength));
+                final long crossing = matcher.find(bridge, 0, bridge.limit(), bridgeStart + bridgeLength >= size);
+                if (crossing >= 0 && bridgeStart + QueryMatcher.start(crossing) < end) {
+                    return log.traceExit(m, bridgeStart + QueryMatcher.start(crossing));
+                }
+            }
+        }
+        return log.traceExit(m, -1L);
+    }
+
+    /**
+     * Copies a range of bytes
+     *
+     * @param from   the offset of the first byte
+     * @param length the number of bytes to copy
+     * @return the copied bytes
+     */
+    byte[] bytes(final long from, final int length) {
+        final byte[] result = new byte[length];
+        for (int i = 0; i < length; i++) {
+            result[i] = get(from + i);
+        }
+        return result;
+    }
+}
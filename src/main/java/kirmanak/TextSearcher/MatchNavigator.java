@@ -0,0 +1,93 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+/**
+ * Walks through the occurrences of the query in the viewed file.
+ * The matches known from the search are used first, when the search has stopped at the limit
+ * the following ones are looked up in the mapped file on demand.
+ */
+@Log4j2
+@Getter
+class MatchNavigator {
+    private final MappedFile file;
+    private final QueryMatcher matcher;
+    private long[] offsets;
+    private int count;
+    private int current = -1;
+    private boolean exhausted;
+
+    MatchNavigator(final MappedFile file, final QueryMatcher matcher, final FileMatches matches) {
+        final EntryMessage m = log.traceEntry(
+                "MatchNavigator(file = {}, matcher = {}, matches = {})", file, matcher, matches
+        );
+        this.file = file;
+        this.matcher = matcher;
+        offsets = Arrays.copyOf(matches.getOffsets(), Math.max(matches.getCount(), 4));
+        count = matches.getCount();
+        exhausted = !matches.isTruncated() || matcher.maxLength() == 0;
+        log.traceExit(m);
+    }
+
+    /**
+     * Moves to the following occurrence, wraps around once all of them are known
+     *
+     * @return the offset of the occurrence or empty if there is none
+     */
+    synchronized OptionalLong next() {
+        final EntryMessage m = log.traceEntry("next()");
+        if (current + 1 >= count && !exhausted) {
+            final long found = file.indexOf(matcher, count == 0 ? 0 : offsets[count - 1] + 1);
+            if (found < 0) {
+                exhausted = true;
+            } else {
+                append(found);
+            }
+        }
+        if (count == 0) {
+            return log.traceExit(m, OptionalLong.empty());
+        }
+        current = current + 1 < count ? current + 1 : 0;
+        return log.traceExit(m, OptionalLong.of(offsets[current]));
+    }
+
+    /**
+     * Moves to the preceding occurrence, wraps around to the last known one
+     *
+     * @return the offset of the occurrence or empty if there is none
+     */
+    synchronized OptionalLong previous() {
+        final EntryMessage m = log.traceEntry("previous()");
+        if (count == 0) {
+            return log.traceExit(m, OptionalLong.empty());
+        }
+        current = current > 0 ? current - 1 : count - 1;
+        return log.traceExit(m, OptionalLong.of(offsets[current]));
+    }
+
+    /**
+     * Describes the position for the user
+     *
+     * @return the current occurrence number and the number of known ones
+     */
+    synchronized String describe() {
+        return String.format("%d of %d%s", current + 1, count, exhausted ? "" : "+");
+    }
+
+    /**
+     * Remembers an occurrence found in the file
+     *
+     * @param offset the offset of the occurrence
+     */
+    private void append(final long offset) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count++] = offset;
+    }
+}
@@ -0,0 +1,22 @@
+package kirmanak.TextSearcher;
+
+import javafx.scene.control.TreeItem;
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+/**
+ * A tree leaf representing a found file together with the locations of the text in it
+ * and the request they have been found by
+ */
+@Getter
+class MatchTreeItem extends TreeItem<Path> {
+    private final FileMatches matches;
+    private final SearchRequest request;
+
+    MatchTreeItem(final Path name, final FileMatches matches, final SearchRequest request) {
+        super(name);
+        this.matches = matches;
+        this.request = request;
+    }
+}
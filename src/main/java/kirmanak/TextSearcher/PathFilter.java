@@ -0,0 +1,283 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which files of the walk are scanned, so most of the bytes are skipped before any scanning.
+ * Include globs match file names and replace the extension of the request when there are any.
+ * Exclude globs match the names of directories and files at any depth, globs containing a slash match
+ * the path relative to the search root like in .gitignore. Excluded directories are not walked at all.
+ * The size and modification time limits are checked against the attributes the walk has already read.
+ * Binary files are recognized by the scanner from the first bytes it reads anyway, see {@link #looksBinary}.
+ */
+@Getter
+@ToString(of = {"includes", "excludes", "minSize", "maxSize", "modifiedWithin", "skipBinary"})
+class PathFilter {
+    static final PathFilter NONE = new PathFilter(
+            Collections.emptyList(), Collections.emptyList(), 0, Long.MAX_VALUE, null, false
+    );
+    static final int SAMPLE_SIZE = 8 * 1024;
+    private static final Pattern AGE = Pattern.compile("\\d{1,9}[mhdw]");
+    private static final String GLOBS = "glob:";
+
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final long minSize;
+    private final long maxSize;
+    private final Duration modifiedWithin;
+    private final boolean skipBinary;
+    private final List<PathMatcher> includeMatchers = new ArrayList<>();
+    private final List<PathMatcher> nameExcludes = new ArrayList<>();
+    private final List<PathMatcher> pathExcludes = new ArrayList<>();
+    private final long modifiedAfter;
+
+    /**
+     * Compiles the globs, the modification time limit is counted from now
+     *
+     * @param includes       the globs of the file names to scan, the extension is used if there are none
+     * @param excludes       the globs of the names or relative paths to skip
+     * @param minSize        the smallest file size to scan in bytes
+     * @param maxSize        the largest file size to scan in bytes
+     * @param modifiedWithin the age of the oldest file to scan or null to scan files of any age
+     * @param skipBinary     whether the files looking binary are skipped
+     */
+    PathFilter(final List<String> includes, final List<String> excludes, final long minSize, final long maxSize,
+               final Duration modifiedWithin, final boolean skipBinary) {
+        this.includes = includes;
+        this.excludes = excludes;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.modifiedWithin = modifiedWithin;
+        this.skipBinary = skipBinary;
+        this.modifiedAfter = Objects.isNull(modifiedWithin)
+                ? Long.MIN_VALUE : System.currentTimeMillis() - modifiedWithin.toMillis();
+        for (final String include : includes) {
+            includeMatchers.add(FileSystems.getDefault().getPathMatcher("glob:" + include));
+        }
+        for (final String exclude : excludes) {
+            final String glob = exclude.replaceAll("^/+|/+$", "");
+            if (glob.isEmpty()) {
+                continue;
+            }
+            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            (glob.contains("/") ? pathExcludes : nameExcludes).add(matcher);
+        }
+    }
+
+    /**
+     * Builds the matcher of the file names to scan
+     *
+     * @param extension the extension of the request
+     * @return the matcher of the include globs or of the extension if there are none
+     */
+    PathMatcher names(final String extension) {
+        if (includeMatchers.isEmpty()) {
+            return FileSystems.getDefault().getPathMatcher(String.format("glob:*.%s", extension));
+        }
+        return name -> {
+            for (final PathMatcher matcher : includeMatchers) {
+                if (matcher.matches(name)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Describes the file names the filter selects, an index is built for every such selection
+     *
+     * @param extension the extension of the request
+     * @return the extension or the include globs if there are any
+     */
+    String selection(final String extension) {
+        return includeMatchers.isEmpty() ? extension : GLOBS + String.join("\n", includes);
+    }
+
+    /**
+     * Builds the matcher of the file names described by {@link #selection(String)}
+     *
+     * @param selection the extension or the include globs
+     * @return the matcher of the selected file names
+     */
+    static PathMatcher selected(final String selection) {
+        if (!selection.startsWith(GLOBS)) {
+            return NONE.names(selection);
+        }
+        final List<String> globs = Arrays.asList(selection.substring(GLOBS.length()).split("\n"));
+        return new PathFilter(globs, Collections.emptyList(), 0, Long.MAX_VALUE, null, false).names(selection);
+    }
+
+    /**
+     * Tells whether the directory or the file is excluded by its name or by its path
+     *
+     * @param root the search root
+     * @param path the directory or the file under the root
+     * @return true if it should be skipped
+     */
+    boolean excludes(final Path root, final Path path) {
+        final Path name = path.getFileName();
+        if (Objects.isNull(name)) {
+            return false;
+        }
+        for (final PathMatcher matcher : nameExcludes) {
+            if (matcher.matches(name)) {
+                return true;
+            }
+        }
+        if (!pathExcludes.isEmpty() && path.startsWith(root)) {
+            final Path relative = root.relativize(path);
+            for (final PathMatcher matcher : pathExcludes) {
+                if (matcher.matches(relative)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether the file or any of its parents below the root is excluded
+     *
+     * @param root the search root
+     * @param path the file under the root
+     * @return true if the file would not be reached by the walk
+     */
+    boolean excludesWithParents(final Path root, final Path path) {
+        final Path base = root.toAbsolutePath().normalize();
+        Path current = path.toAbsolutePath().normalize();
+        while (Objects.nonNull(current) && current.startsWith(base) && !current.equals(base)) {
+            if (excludes(base, current)) {
+                return true;
+            }
+            current = current.getParent();
+        }
+        return false;
+    }
+
+    /**
+     * Checks the size and modification time limits
+     *
+     * @param attributes the attributes of the file
+     * @return true if the file is within the limits
+     */
+    boolean accepts(final BasicFileAttributes attributes) {
+        return attributes.size() >= minSize && attributes.size() <= maxSize
+                && attributes.lastModifiedTime().toMillis() >= modifiedAfter;
+    }
+
+    /**
+     * Guesses whether the sample is a part of a binary file like grep does: text has no zero bytes.
+     * UTF-16 text is the exception, it starts with a byte order mark or has its zero bytes on the same side
+     * of the character pairs, paired with printable characters.
+     *
+     * @param buffer the buffer containing the first bytes of the file
+     * @param from   the index of the first byte
+     * @param to     the index after the last byte of the sample
+     * @return true if the sample looks binary
+     */
+    static boolean looksBinary(final ByteBuffer buffer, final int from, final int to) {
+        if (to - from >= 2) {
+            final int first = buffer.get(from) & 0xFF;
+            final int second = buffer.get(from + 1) & 0xFF;
+            if (first == 0xFF && second == 0xFE || first == 0xFE && second == 0xFF) {
+                return false;
+            }
+        }
+        int even = 0;
+        int odd = 0;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == 0) {
+                if ((i - from & 1) == 0) {
+                    even++;
+                } else {
+                    odd++;
+                }
+            }
+        }
+        if (even + odd == 0) {
+            return false;
+        }
+        if (Math.min(even, odd) * 10 >= Math.max(even, odd)) {
+            return true;
+        }
+        final int zero = even > odd ? 0 : 1;
+        for (int i = from; i + 1 < to; i += 2) {
+            final int other = buffer.get(i + 1 - zero) & 0xFF;
+            if (buffer.get(i + zero) == 0 && other < 0x20 && other != '\t' && other != '\n' && other != '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a size like 512, 64K, 10M or 2G, the suffixes are binary
+     *
+     * @param text the size
+     * @return the size in bytes
+     * @throws IllegalArgumentException if the size could not be parsed
+     */
+    static long parseSize(final String text) {
+        final String size = text.trim().toUpperCase(Locale.ROOT);
+        final int shift;
+        switch (size.isEmpty() ? ' ' : size.charAt(size.length() - 1)) {
+            case 'K':
+                shift = 10;
+                break;
+            case 'M':
+                shift = 20;
+                break;
+            case 'G':
+                shift = 30;
+                break;
+            default:
+                shift = 0;
+        }
+        try {
+            return Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1)) << shift;
+        } catch (final NumberFormatException err) {
+            throw new IllegalArgumentException(String.format("Invalid size \"%s\", expected e.g. 64K or 10M", text));
+        }
+    }
+
+    /**
+     * Parses an age like 30m, 12h, 7d or 2w
+     *
+     * @param text the age
+     * @return the age
+     * @throws IllegalArgumentException if the age could not be parsed
+     */
+    static Duration parseAge(final String text) {
+        final String age = text.trim().toLowerCase(Locale.ROOT);
+        if (!AGE.matcher(age).matches()) {
+            throw new IllegalArgumentException(String.format("Invalid age \"%s\", expected e.g. 12h or 7d", text));
+        }
+        final long amount = Long.parseLong(age.substring(0, age.length() - 1));
+        switch (age.charAt(age.length() - 1)) {
+            case 'm':
+                return Duration.ofMinutes(amount);
+            case 'h':
+                return Duration.ofHours(amount);
+            case 'd':
+                return Duration.ofDays(amount);
+            default:
+                return Duration.ofDays(amount * 7);
+        }
+    }
+}
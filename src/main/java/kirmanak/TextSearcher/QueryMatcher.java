@@ -0,0 +1,159 @@
+package kirmanak.TextSearcher;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the query in raw bytes. Implementations are immutable and shared by all scanning threads.
+ * A match is returned as its start and end packed into a single long, see {@link #match(int, int)}.
+ */
+interface QueryMatcher {
+    /**
+     * Matches nothing, used for the encodings the query cannot be represented in
+     */
+    QueryMatcher NOTHING = new QueryMatcher() {
+        @Override
+        public long find(final ByteBuffer buffer, final int from, final int to) {
+            return -1;
+        }
+
+        @Override
+        public int maxLength() {
+            return 0;
+        }
+
+        @Override
+        public List<byte[]> requiredLiterals() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Pattern textPattern() {
+            return Pattern.compile("(?!)");
+        }
+    };
+
+    /**
+     * Looks for the first match starting between the provided absolute positions
+     *
+     * @param buffer the buffer to search in, its position and limit are ignored
+     * @param from   the first index a match may start at (inclusive)
+     * @param to     the index every match must end before (exclusive)
+     * @return the packed match or -1 if there is none
+     */
+    long find(ByteBuffer buffer, int from, int to);
+
+    /**
+     * Looks for the first match between the provided absolute positions when the part may end before the text does.
+     * A match whose checks need the bytes after the part, like the character after a whole word, is not returned
+     * then, nor is anything after it. The caller finds it in the next part, which overlaps this one
+     * by {@link #maxLength()} minus one bytes.
+     *
+     * @param buffer   the buffer to search in, its position and limit are ignored
+     * @param from     the first index a match may start at (inclusive)
+     * @param to       the index every match must end before (exclusive)
+     * @param textEnds whether the text ends at the end of the part
+     * @return the packed match or -1 if there is none
+     */
+    default long find(final ByteBuffer buffer, final int from, final int to, final boolean textEnds) {
+        return find(buffer, from, to);
+    }
+
+    /**
+     * Gets the length of the longest possible match together with the bytes around it its checks look at,
+     * the buffers are overlapped by this length minus one
+     *
+     * @return the maximal match length in bytes
+     */
+    int maxLength();
+
+    /**
+     * Gets the literals one of which every match contains, used to narrow the search with the index
+     *
+     * @return the encoded literals or an empty list if any file may match
+     */
+    List<byte[]> requiredLiterals();
+
+    /**
+     * Gets the same query for the decoded text, used to highlight the matches
+     *
+     * @return the pattern matching the same text as this matcher
+     */
+    Pattern textPattern();
+
+    /**
+     * Packs the match bounds into a single value
+     *
+     * @param start the index of the first byte of the match
+     * @param end   the index after the last byte of the match
+     * @return the packed match
+     */
+    static long match(final int start, final int end) {
+        return (long) start << 32 | end;
+    }
+
+    /**
+     * Unpacks the start of the match
+     *
+     * @param match the packed match
+     * @return the index of the first byte of the match
+     */
+    static int start(final long match) {
+        return (int) (match >>> 32);
+    }
+
+    /**
+     * Unpacks the end of the match
+     *
+     * @param match the packed match
+     * @return the index after the last byte of the match
+     */
+    static int end(final long match) {
+        return (int) match;
+    }
+
+    /**
+     * Compiles the query for the files in the encoding
+     *
+     * @param mode       how the text is interpreted
+     * @param text       the search text
+     * @param encoding   the encoding of the searched files
+     * @param ignoreCase whether the case variants of the text match as well
+     * @param wholeWord  whether the matches must not be parts of longer words
+     * @return the matcher for the query, {@link #NOTHING} if no literal of the text is representable in the encoding
+     */
+    static QueryMatcher of(final QueryMode mode, final String text, final TextEncoding encoding,
+                           final boolean ignoreCase, final boolean wholeWord) {
+        if (mode == QueryMode.REGEX) {
+            return new RegexMatcher(text, encoding, ignoreCase, wholeWord);
+        }
+        final List<String> literals = new ArrayList<>();
+        for (final String literal : mode == QueryMode.ANY ? text.split("\n") : new String[]{text}) {
+            if (!literal.isEmpty() && encoding.canEncode(literal)) {
+                literals.add(literal);
+            }
+        }
+        if (wholeWord && literals.size() > 1) {
+            // the automaton reports the literal ending first, the longer ones starting there are left to the expression
+            return new RegexMatcher(literals.stream()
+                    .sorted((left, right) -> right.length() - left.length())
+                    .map(RegexMatcher::quote)
+                    .collect(Collectors.joining("|")), encoding, ignoreCase, true);
+        }
+        final QueryMatcher matcher;
+        if (literals.size() > 1) {
+            matcher = new AhoCorasickMatcher(literals, encoding.getCharset(), ignoreCase);
+        } else if (!literals.isEmpty() && ignoreCase) {
+            matcher = new CaseFoldingMatcher(literals.get(0), encoding.getCharset());
+        } else if (!literals.isEmpty() || text.replace("\n", "").isEmpty()) {
+            matcher = new ByteMatcher(literals.isEmpty() ? "" : literals.get(0), encoding.getCharset());
+        } else {
+            return NOTHING;
+        }
+        return wholeWord ? new WholeWordMatcher(matcher, encoding) : matcher;
+    }
+}
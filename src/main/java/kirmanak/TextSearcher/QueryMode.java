@@ -0,0 +1,31 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * How the search text is interpreted
+ */
+@Getter
+@RequiredArgsConstructor
+enum QueryMode {
+    /**
+     * The text is a single literal
+     */
+    TEXT("Text"),
+    /**
+     * The text is a list of literals separated by line feeds, a file matches if it contains any of them
+     */
+    ANY("Any of (separated by |)"),
+    /**
+     * The text is a java.util.regex pattern matched against single lines
+     */
+    REGEX("Regular expression");
+
+    private final String label;
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,453 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches a regular expression against single lines.
+ * The literals every match has to contain are taken from the expression and looked up in the raw bytes first,
+ * only the lines containing one of them are decoded and checked with java.util.regex.
+ * Expressions without such literals are checked line by line.
+ * A line cut off by the end of a part of the text is left for the next part, which overlaps it by
+ * {@link #MAX_LINE_BYTES} minus one bytes, so "$" and the lookaheads do not see a line end that is not there.
+ * Only the matches before that overlap are taken from the longer lines.
+ * The line feeds are found in the raw bytes of the encoding, see {@link TextEncoding}.
+ * Whole words are matched by surrounding the expression with the word border checks of {@link WholeWordMatcher}.
+ */
+@Log4j2
+@Getter
+class RegexMatcher implements QueryMatcher {
+    static final int MAX_LINE_BYTES = 64 * 1024;
+
+    private final Pattern pattern;
+    private final TextEncoding encoding;
+    private final Charset charset;
+    private final List<String> literals;
+    private final QueryMatcher prefilter;
+
+    RegexMatcher(final String regex, final TextEncoding encoding, final boolean ignoreCase, final boolean wholeWord) {
+        final EntryMessage m = log.traceEntry(
+                "RegexMatcher(regex = {}, encoding = {}, ignoreCase = {}, wholeWord = {})",
+                regex, encoding, ignoreCase, wholeWord
+        );
+        this.pattern = Pattern.compile(wholeWord ? WholeWordMatcher.wrap(regex) : regex,
+                ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        this.encoding = encoding;
+        this.charset = encoding.getCharset();
+        this.literals = requiredLiterals(regex);
+        if (literals.isEmpty()) {
+            prefilter = null;
+        } else if (literals.size() > 1) {
+            prefilter = new AhoCorasickMatcher(literals, charset, ignoreCase);
+        } else if (ignoreCase) {
+            prefilter = new CaseFoldingMatcher(literals.get(0), charset);
+        } else {
+            prefilter = new ByteMatcher(literals.get(0), charset);
+        }
+        log.traceExit(m);
+    }
+
+    @Override
+    public long find(final ByteBuffer buffer, final int from, final int to) {
+        return find(buffer, from, to, true);
+    }
+
+    @Override
+    public long find(final ByteBuffer buffer, final int from, final int to, final boolean textEnds) {
+        final int nextPart = to - (MAX_LINE_BYTES - 1);
+        int position = from;
+        while (position < to) {
+            int candidate = position;
+            if (Objects.nonNull(prefilter)) {
+                final long hit = prefilter.find(buffer, position, to);
+                if (hit < 0) {
+                    return -1;
+                }
+                candidate = QueryMatcher.start(hit);
+            }
+            int lineStart = candidate;
+            while (lineStart > 0 && candidate - lineStart < MAX_LINE_BYTES
+                    && !encoding.isLineStart(buffer, lineStart)) {
+                lineStart--;
+            }
+            int lineEnd = candidate;
+            while (lineEnd < to && !encoding.isLineFeed(buffer, lineEnd)) {
+                lineEnd++;
+            }
+            final boolean unfinished = !textEnds && lineEnd == to;
+            if (unfinished && lineStart >= nextPart) {
+                // the whole line is searched in the next part
+                return -1;
+            }
+            final int contentEnd = lineEnd < to ? Math.max(lineEnd - encoding.getLineFeedHead(), lineStart) : lineEnd;
+            final long match = matchLine(buffer, lineStart, contentEnd, from);
+            if (match >= 0) {
+                // the end of the part is not the end of a longer line, the next part sees the rest of it
+                final boolean cut = unfinished
+                        && (QueryMatcher.start(match) >= nextPart || QueryMatcher.end(match) >= to);
+                return cut ? -1 : match;
+            }
+            position = lineEnd + encoding.getLineFeedTail();
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the line and looks for the first match starting not before the provided index
+     *
+     * @param buffer    the buffer containing the line
+     * @param lineStart the index of the first byte of the line
+     * @param lineEnd   the index of the first byte of the line feed or the end of the searched part
+     * @param from      the first index a match may start at
+     * @return the packed match or -1 if there is none
+     */
+    private long matchLine(final ByteBuffer buffer, final int lineStart, final int lineEnd, final int from) {
+        final byte[] bytes = new byte[lineEnd - lineStart];
+        buffer.get(lineStart, bytes);
+        final String line = new String(bytes, charset);
+        final Matcher matcher = pattern.matcher(line);
+        int start = lineStart;
+        int chars = 0;
+        while (matcher.find()) {
+            start += encodedLength(line, chars, matcher.start());
+            chars = matcher.start();
+            if (start >= from) {
+                return QueryMatcher.match(start, start + encodedLength(line, matcher.start(), matcher.end()));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the bytes of the part of the decoded line, malformed input is counted as decoded
+     *
+     * @param line the decoded line
+     * @param from the index of the first char (inclusive)
+     * @param to   the index of the last char (exclusive)
+     * @return the number of bytes the chars take in the file
+     */
+    private int encodedLength(final String line, final int from, final int to) {
+        if (from == to) {
+            return 0;
+        }
+        return line.substring(from, to).getBytes(charset).length;
+    }
+
+    @Override
+    public int maxLength() {
+        return MAX_LINE_BYTES;
+    }
+
+    @Override
+    public List<byte[]> requiredLiterals() {
+        return Objects.isNull(prefilter) ? Collections.emptyList() : prefilter.requiredLiterals();
+    }
+
+    @Override
+    public Pattern textPattern() {
+        return pattern;
+    }
+
+    /**
+     * Escapes the ASCII punctuation of the literal, unlike {@link Pattern#quote} the result still gives
+     * the literal to {@link #requiredLiterals(String)}
+     *
+     * @param literal the text to match as it is
+     * @return the expression matching the literal
+     */
+    static String quote(final String literal) {
+        final StringBuilder result = new StringBuilder(literal.length() * 2);
+        for (int i = 0; i < literal.length(); i++) {
+            final char c = literal.charAt(i);
+            if (c < 0x80 && !Character.isLetterOrDigit(c)) {
+                result.append('\\');
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Finds the literals one of which is contained in every match of the expression.
+     * The expression is split into its top level alternatives and the longest run of plain characters
+     * outside groups and classes is taken from each of them. Anything not understood gives no literals.
+     *
+     * @param regex the regular expression
+     * @return a literal for every alternative or an empty list if some alternative has none
+     */
+    static List<String> requiredLiterals(final String regex) {
+        final EntryMessage m = log.traceEntry("requiredLiterals(regex = {})", regex);
+        if (regex.contains("(?") || regex.contains("\\Q")) {
+            return log.traceExit(m, Collections.emptyList());
+        }
+        final List<String> result = new ArrayList<>();
+        for (final String alternative : alternatives(regex)) {
+            final String literal = longestLiteral(alternative);
+            if (literal.isEmpty()) {
+                return log.traceExit(m, Collections.emptyList());
+            }
+            result.add(literal);
+        }
+        return log.traceExit(m, result);
+    }
+
+    /**
+     * Splits the expression by the alternations outside groups and classes
+     *
+     * @param regex the regular expression
+     * @return the top level alternatives
+     */
+    private static List<String> alternatives(final String regex) {
+        final List<String> result = new ArrayList<>();
+        int depth = 0;
+        boolean inClass = false;
+        int start = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                result.add(regex.substring(start, i));
+                start = i + 1;
+            }
+        }
+        result.add(regex.substring(start));
+        return result;
+    }
+
+    /**
+     * Finds the longest run of characters every match of the alternative contains
+     *
+     * @param alternative an expression without top level alternations
+     * @return the literal or an empty string if there is none
+     */
+    private static String longestLiteral(final String alternative) {
+        String best = "";
+        final StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < alternative.length()) {
+            final char c = alternative.charAt(i);
+            int next = i + 1;
+            int literal = -1;
+            if (c == '\\') {
+                if (next < alternative.length() && !Character.isLetterOrDigit(alternative.charAt(next))) {
+                    literal = alternative.charAt(next);
+                    next++;
+                } else {
+                    next = skipEscape(alternative, i);
+                    if (next < 0) {
+                        return "";
+                    }
+                }
+            } else if (c == '[') {
+                next = skipClass(alternative, next);
+            } else if (c == '(') {
+                next = skipGroup(alternative, next);
+            } else if ("*+?{.^$)".indexOf(c) < 0) {
+                literal = c;
+            }
+            final char quantifier = next < alternative.length() ? alternative.charAt(next) : 0;
+            final boolean optional = quantifier == '*' || quantifier == '?'
+                    || (quantifier == '{' && next + 1 < alternative.length() && alternative.charAt(next + 1) == '0');
+            if (literal >= 0 && !optional) {
+                run.append((char) literal);
+            }
+            if (literal < 0 || optional || quantifier == '+' || quantifier == '{') {
+                if (run.length() > best.length()) {
+                    best = run.toString();
+                }
+                run.setLength(0);
+            }
+            i = skipQuantifier(alternative, next);
+        }
+        return run.length() > best.length() ? run.toString() : best;
+    }
+
+    /**
+     * Skips an escape starting with a letter or a digit together with its argument,
+     * like the hex digits of \\x41, the name of \\p{Alpha} or the quoted text of \\Q...\\E
+     *
+     * @param regex the expression
+     * @param from  the index of the backslash
+     * @return the index after the escape or -1 if the escape is not understood
+     */
+    private static int skipEscape(final String regex, final int from) {
+        final int i = from + 2;
+        if (i > regex.length()) {
+            return -1;
+        }
+        switch (regex.charAt(from + 1)) {
+            case 'x':
+                if (i < regex.length() && regex.charAt(i) == '{') {
+                    return skipTo(regex, i, '}');
+                }
+                return skipDigits(regex, i, 16, 2);
+            case 'u':
+                return skipDigits(regex, i, 16, 4);
+            case '0':
+                return skipDigits(regex, i, 8, i < regex.length() && regex.charAt(i) <= '3' ? 3 : 2);
+            case 'c':
+                return i < regex.length() ? i + 1 : -1;
+            case 'k':
+                return i < regex.length() && regex.charAt(i) == '<' ? skipTo(regex, i, '>') : -1;
+            case 'p':
+            case 'P':
+                if (i < regex.length() && regex.charAt(i) == '{') {
+                    return skipTo(regex, i, '}');
+                }
+                return i < regex.length() ? i + 1 : -1;
+            case 'N':
+                return i < regex.length() && regex.charAt(i) == '{' ? skipTo(regex, i, '}') : -1;
+            case 'b':
+                return i < regex.length() && regex.charAt(i) == '{' ? skipTo(regex, i, '}') : i;
+            case 'Q': {
+                final int end = regex.indexOf("\\E", i);
+                return end < 0 ? regex.length() : end + 2;
+            }
+            default:
+                if (Character.isDigit(regex.charAt(from + 1))) {
+                    // a back reference, java.util.regex takes as many digits as there are groups
+                    int j = i;
+                    while (j < regex.length() && Character.isDigit(regex.charAt(j))) {
+                        j++;
+                    }
+                    return j;
+                }
+                return i;
+        }
+    }
+
+    /**
+     * Skips the argument of an escape up to the closing character
+     *
+     * @param regex the expression
+     * @param from  the index of the opening character
+     * @param close the closing character
+     * @return the index after the closing character or -1 if there is none
+     */
+    private static int skipTo(final String regex, final int from, final char close) {
+        final int end = regex.indexOf(close, from);
+        return end < 0 ? -1 : end + 1;
+    }
+
+    /**
+     * Skips the digits of a numeric escape, octal escapes may be shorter than the maximum
+     *
+     * @param regex the expression
+     * @param from  the index of the first digit
+     * @param radix 16 for hex escapes, 8 for octal ones
+     * @param count the number of digits, the exact number for hex escapes and the maximum for octal ones
+     * @return the index after the digits or -1 if there are not enough of them
+     */
+    private static int skipDigits(final String regex, final int from, final int radix, final int count) {
+        int i = from;
+        while (i < regex.length() && i - from < count && Character.digit(regex.charAt(i), radix) >= 0) {
+            i++;
+        }
+        if (i == from || radix == 16 && i - from < count) {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Skips a character class
+     *
+     * @param regex the expression
+     * @param from  the index after the opening bracket
+     * @return the index after the closing bracket
+     */
+    private static int skipClass(final String regex, final int from) {
+        int i = from;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        int depth = 1;
+        while (i < regex.length() && depth > 0) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skips a group including the nested ones
+     *
+     * @param regex the expression
+     * @param from  the index after the opening parenthesis
+     * @return the index after the closing parenthesis
+     */
+    private static int skipGroup(final String regex, final int from) {
+        int i = from;
+        int depth = 1;
+        while (i < regex.length() && depth > 0) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = skipClass(regex, i + 1) - 1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skips a quantifier together with its lazy or possessive suffix
+     *
+     * @param regex the expression
+     * @param from  the index after the quantified atom
+     * @return the index of the next atom
+     */
+    private static int skipQuantifier(final String regex, final int from) {
+        int i = from;
+        if (i >= regex.length()) {
+            return i;
+        }
+        final char c = regex.charAt(i);
+        if (c == '*' || c == '+' || c == '?') {
+            i++;
+        } else if (c == '{') {
+            final int close = regex.indexOf('}', i);
+            i = close < 0 ? regex.length() : close + 1;
+        } else {
+            return i;
+        }
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,160 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Snapshots of the recent searches kept in the least recently used order.
+ * The cache is bounded by the total number of remembered files taken from the "textsearcher.cacheFiles"
+ * system property. If the "textsearcher.cacheSpill" system property is set, evicted snapshots are written
+ * to the disk and read back when the same search is repeated.
+ */
+@Log4j2
+@Getter
+class ResultCache {
+    private static final Path CACHE_FOLDER = Paths.get(System.getProperty("user.home"), ".TextSearcher", "cache");
+    private static final ResultCache INSTANCE = new ResultCache(
+            Integer.getInteger("textsearcher.cacheFiles", 500_000), Boolean.getBoolean("textsearcher.cacheSpill")
+    );
+
+    private final int maxFiles;
+    private final boolean spill;
+    private final LinkedHashMap<String, SearchSnapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedFiles = 0;
+
+    ResultCache(final int maxFiles, final boolean spill) {
+        this.maxFiles = maxFiles;
+        this.spill = spill;
+    }
+
+    /**
+     * Gets the cache shared by the whole application
+     *
+     * @return the shared cache
+     */
+    static ResultCache get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Finds the snapshot of the same search in the memory or on the disk
+     *
+     * @param request the search to look for
+     * @return the snapshot or nothing if the search has not been run or has been evicted
+     */
+    Optional<SearchSnapshot> exact(final SearchRequest request) {
+        final EntryMessage m = log.traceEntry("exact(request = {})", request);
+        final String key = new SearchSnapshot(request).key();
+        synchronized (this) {
+            final SearchSnapshot snapshot = snapshots.get(key);
+            if (Objects.nonNull(snapshot)) {
+                return log.traceExit(m, Optional.of(snapshot));
+            }
+        }
+        final Path file = spillFile(key);
+        if (isSpill() && Files.isRegularFile(file)) {
+            try {
+                final Optional<SearchSnapshot> snapshot = SearchSnapshot.read(file, key);
+                snapshot.ifPresent(this::put);
+                return log.traceExit(m, snapshot);
+            } catch (final IOException err) {
+                log.error("exact(request = {})", request, err);
+            }
+        }
+        return log.traceExit(m, Optional.empty());
+    }
+
+    /**
+     * Finds the snapshot of a search in the same folder with a text contained in the requested one.
+     * Only the files matching that text may match the requested text, the longest such text is preferred.
+     * Only plain text searches are refined, a longer list of literals or expression may match more files.
+     * The case must be ignored by both searches or by none, whole word results are never refined.
+     * The files must have been selected by an equal filter, as only the files of the snapshot are scanned.
+     *
+     * @param request the search to look for
+     * @return the snapshot or nothing if there is no such search in the memory
+     */
+    synchronized Optional<SearchSnapshot> refinable(final SearchRequest request) {
+        final EntryMessage m = log.traceEntry("refinable(request = {})", request);
+        final SearchSnapshot wanted = new SearchSnapshot(request);
+        SearchSnapshot best = null;
+        if (wanted.getQueryMode() != QueryMode.TEXT) {
+            return log.traceExit(m, Optional.empty());
+        }
+        for (final SearchSnapshot snapshot : snapshots.values()) {
+            if (snapshot.getRoot().equals(wanted.getRoot())
+                    && snapshot.getExtension().equals(wanted.getExtension())
+                    && snapshot.isSkipBinary() == wanted.isSkipBinary()
+                    && snapshot.getFilter().equals(wanted.getFilter())
+                    && snapshot.getQueryMode() == QueryMode.TEXT
+                    && snapshot.isIgnoreCase() == wanted.isIgnoreCase() && !snapshot.isWholeWord()
+                    && wanted.getText().contains(snapshot.getText())
+                    && (Objects.isNull(best) || snapshot.getText().length() > best.getText().length())) {
+                best = snapshot;
+            }
+        }
+        Optional.ofNullable(best).ifPresent(snapshot -> snapshots.get(snapshot.key()));
+        return log.traceExit(m, Optional.ofNullable(best));
+    }
+
+    /**
+     * Remembers the snapshot evicting the least recently used ones if there are too many files
+     *
+     * @param snapshot the snapshot of a finished search
+     */
+    void put(final SearchSnapshot snapshot) {
+        final EntryMessage m = log.traceEntry("put(snapshot = {})", snapshot.key());
+        final List<SearchSnapshot> evicted = new ArrayList<>();
+        synchronized (this) {
+            Optional.ofNullable(snapshots.put(snapshot.key(), snapshot))
+                    .ifPresent(previous -> cachedFiles -= previous.getFiles().size());
+            cachedFiles += snapshot.getFiles().size();
+            final Iterator<SearchSnapshot> iterator = snapshots.values().iterator();
+            while (cachedFiles > maxFiles && iterator.hasNext()) {
+                final SearchSnapshot eldest = iterator.next();
+                iterator.remove();
+                cachedFiles -= eldest.getFiles().size();
+                evicted.add(eldest);
+            }
+        }
+        if (isSpill()) {
+            for (final SearchSnapshot eldest : evicted) {
+                try {
+                    eldest.write(spillFile(eldest.key()));
+                } catch (final IOException err) {
+                    log.error("put(snapshot = {})", eldest.key(), err);
+                }
+            }
+        }
+        log.traceExit(m);
+    }
+
+    /**
+     * Chooses the file for the spilled snapshot
+     *
+     * @param key the key of the snapshot
+     * @return the file in the cache folder named after the hash of the key
+     */
+    private static Path spillFile(final String key) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", hash[i]));
+            }
+            return CACHE_FOLDER.resolve(name.append(".cache").toString());
+        } catch (final NoSuchAlgorithmException err) {
+            throw new IllegalStateException(err);
+        }
+    }
+}
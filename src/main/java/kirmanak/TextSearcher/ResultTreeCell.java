@@ -0,0 +1,23 @@
+package kirmanak.TextSearcher;
+
+import javafx.scene.control.TreeCell;
+
+import java.nio.file.Path;
+
+/**
+ * Shows the number of matches next to every found file
+ */
+class ResultTreeCell extends TreeCell<Path> {
+    @Override
+    protected void updateItem(final Path item, final boolean empty) {
+        super.updateItem(item, empty);
+        if (empty || item == null) {
+            setText(null);
+        } else if (getTreeItem() instanceof MatchTreeItem) {
+            final FileMatches matches = ((MatchTreeItem) getTreeItem()).getMatches();
+            setText(String.format("%s (%d%s)", item, matches.getCount(), matches.isTruncated() ? "+" : ""));
+        } else {
+            setText(item.toString());
+        }
+    }
+}
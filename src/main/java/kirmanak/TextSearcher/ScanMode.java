@@ -0,0 +1,16 @@
+package kirmanak.TextSearcher;
+
+/**
+ * How the file content is scanned
+ */
+enum ScanMode {
+    /**
+     * A fixed pool of platform threads, good for large files where matching dominates
+     */
+    POOL,
+    /**
+     * A virtual thread per file limited by the number of open files, good for many small files
+     * where waiting for open and read dominates
+     */
+    VIRTUAL_THREADS
+}
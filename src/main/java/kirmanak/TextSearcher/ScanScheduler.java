@@ -0,0 +1,108 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The thread pools shared by all searches of the application.
+ * Directory listing is I/O-bound and gets its own fork/join pool, scanning file content is limited separately.
+ * The sizes are taken from the "textsearcher.scanThreads" and "textsearcher.walkThreads" system properties.
+ * In the {@link ScanMode#VIRTUAL_THREADS} mode every file gets its own virtual thread instead,
+ * the number of files open at once is limited by the "textsearcher.maxOpenFiles" system property.
+ * Parts of a single large file are scanned on a separate fork/join pool sized by "textsearcher.splitThreads",
+ * so a scan waiting for its parts never blocks the pool the parts run on.
+ */
+@Log4j2
+@Getter
+class ScanScheduler {
+    private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+    private static final ScanScheduler INSTANCE = new ScanScheduler(
+            Integer.getInteger("textsearcher.scanThreads", PROCESSORS),
+            Integer.getInteger("textsearcher.walkThreads", PROCESSORS * 2),
+            Integer.getInteger("textsearcher.maxOpenFiles", 512),
+            Integer.getInteger("textsearcher.splitThreads", PROCESSORS)
+    );
+
+    private final int scanThreads;
+    private final int walkThreads;
+    private final ThreadPoolExecutor scanPool;
+    private final ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore openFiles;
+    private final ForkJoinPool walkPool;
+    private final ForkJoinPool splitPool;
+
+    ScanScheduler(final int scanThreads, final int walkThreads, final int maxOpenFiles, final int splitThreads) {
+        final EntryMessage m = log.traceEntry(
+                "ScanScheduler(scanThreads = {}, walkThreads = {}, maxOpenFiles = {}, splitThreads = {})",
+                scanThreads, walkThreads, maxOpenFiles, splitThreads
+        );
+        this.openFiles = new Semaphore(maxOpenFiles);
+        this.scanThreads = scanThreads;
+        this.walkThreads = walkThreads;
+        final AtomicInteger counter = new AtomicInteger();
+        this.scanPool = new ThreadPoolExecutor(
+                scanThreads, scanThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    final Thread thread = new Thread(runnable, "scan-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        this.walkPool = new ForkJoinPool(walkThreads, pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("walk-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        this.splitPool = new ForkJoinPool(splitThreads, pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("split-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        log.traceExit(m);
+    }
+
+    /**
+     * Gets the scheduler shared by the whole application
+     *
+     * @return the shared scheduler
+     */
+    static ScanScheduler get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the executor for the scan mode
+     *
+     * @param mode the scan mode
+     * @return the executor to run file scans on
+     */
+    Executor executor(final ScanMode mode) {
+        return mode == ScanMode.VIRTUAL_THREADS ? virtualThreads : scanPool;
+    }
+
+    /**
+     * Counts the files waiting for a scan thread or, in the virtual threads mode, for an open file slot
+     *
+     * @return the number of waiting files
+     */
+    int scanQueueDepth() {
+        return scanPool.getQueue().size() + openFiles.getQueueLength();
+    }
+
+    /**
+     * Stops all pools interrupting running jobs
+     */
+    void shutdown() {
+        final EntryMessage m = log.traceEntry("shutdown()");
+        scanPool.shutdownNow();
+        virtualThreads.shutdownNow();
+        walkPool.shutdownNow();
+        splitPool.shutdownNow();
+        log.traceExit(m);
+    }
+}
@@ -0,0 +1,136 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs a search on the {@link SearchServer} instead of this process, it is used when the server is running.
+ * The found files are passed to the listener on the calling thread as soon as the server reports them,
+ * the progress of the server is available the same way as the progress of the {@link SearchEngine}.
+ * A single client runs a single search.
+ */
+@Log4j2
+@Getter
+class SearchClient {
+    private final SocketChannel channel;
+    private volatile long completed = 0;
+    private volatile long total = -1;
+    private volatile long submitted = 0;
+    private volatile String summary = "";
+
+    private SearchClient(final SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Connects to the server listening on the socket set by the "textsearcher.socket" system property
+     *
+     * @return the connected client or nothing if the server is not running
+     */
+    static Optional<SearchClient> connect() {
+        return connect(SearchProtocol.socketPath());
+    }
+
+    /**
+     * Connects to the server listening on the socket
+     *
+     * @param socket the socket of the server
+     * @return the connected client or nothing if the server is not running
+     */
+    static Optional<SearchClient> connect(final Path socket) {
+        final EntryMessage m = log.traceEntry("connect(socket = {})", socket);
+        if (!Files.exists(socket)) {
+            return log.traceExit(m, Optional.empty());
+        }
+        try {
+            final SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            return log.traceExit(m, Optional.of(new SearchClient(channel)));
+        } catch (final IOException err) {
+            log.debug("connect(socket = {}): the server is not running", socket, err);
+            return log.traceExit(m, Optional.empty());
+        }
+    }
+
+    /**
+     * Sends the request and reads the results until the search is over, then closes the connection.
+     * Closing the connection early cancels the search on the server.
+     *
+     * @param request    the search to run
+     * @param listener   the listener of found files
+     * @param onProgress called whenever the server reports its progress
+     * @param cancelled  checked after every frame, the search is abandoned when it is raised
+     * @return the number of files containing the text
+     * @throws IOException if the connection failed or the search has failed on the server
+     */
+    int run(final SearchRequest request, final SearchListener listener, final Runnable onProgress,
+            final BooleanSupplier cancelled) throws IOException {
+        final EntryMessage m = log.traceEntry("run(request = {})", request);
+        try (channel) {
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel))
+            );
+            SearchProtocol.writeRequest(out, request);
+            out.flush();
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            int found = 0;
+            while (!cancelled.getAsBoolean()) {
+                final byte frame = in.readByte();
+                switch (frame) {
+                    case SearchProtocol.MATCH:
+                        listener.onMatch(SearchProtocol.readMatches(in, request.getRootFolder()));
+                        found++;
+                        break;
+                    case SearchProtocol.PROGRESS:
+                        completed = in.readLong();
+                        total = in.readLong();
+                        submitted = in.readLong();
+                        onProgress.run();
+                        break;
+                    case SearchProtocol.DONE:
+                        found = in.readInt();
+                        summary = SearchProtocol.readString(in);
+                        return log.traceExit(m, found);
+                    case SearchProtocol.FAILED:
+                        throw new IOException(SearchProtocol.readString(in));
+                    default:
+                        throw new IOException(String.format("Unexpected frame %d", frame));
+                }
+            }
+            return log.traceExit(m, found);
+        }
+    }
+
+    /**
+     * Tells whether the total number of files to scan is known
+     *
+     * @return false while the server is still walking the tree
+     */
+    boolean isTotalKnown() {
+        return total >= 0;
+    }
+
+    /**
+     * Closes the connection without sending a request
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (final IOException err) {
+            log.error("close()", err);
+        }
+    }
+}
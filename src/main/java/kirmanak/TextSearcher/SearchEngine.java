@@ -0,0 +1,325 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Runs a single search without any UI dependencies.
+ * Files are scanned by the shared {@link ScanScheduler} while the directory walk is still running
+ * and every file containing the text is reported to the listener as soon as it is scanned.
+ * If the index is used, it is brought up to date and only the candidate files it reports are scanned.
+ * Raising the cancellation flag stops the walk and makes the remaining scans return immediately.
+ * The outcome of a finished search is kept in the {@link ResultCache}: when the same search is repeated,
+ * only the files whose size or modification time has changed are scanned again; when the text extends
+ * the text of a cached search, the unchanged files which did not contain the old text are skipped.
+ * A narrowing request does not walk the tree at all when there is such a search, only its matching files are scanned.
+ * The counters and latencies of the search are collected in its {@link SearchMetrics}.
+ * The {@link PathFilter} of the request is applied by the walk, the candidates of the index are checked on their own.
+ */
+@Log4j2
+@Getter
+class SearchEngine {
+    private static final int MAX_PENDING_FILES = 4096;
+    private static final long PROGRESS_INTERVAL_MILLIS = 100;
+
+    private final SearchRequest request;
+    private final SearchListener listener;
+    private final BooleanSupplier cancelled;
+    private final EncodedQuery query;
+    private final FileScanner scanner;
+    private final ArchiveScanner archiveScanner;
+    private final PathMatcher namePattern;
+    private final Executor executor;
+    private final Semaphore pending = new Semaphore(MAX_PENDING_FILES);
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicInteger found = new AtomicInteger();
+    private final SearchMetrics metrics = SearchMetrics.forSearch();
+    private final Optional<SearchSnapshot> previous;
+    private final boolean refinement;
+    private final boolean narrowed;
+    private final SearchSnapshot snapshot;
+    private volatile long total = -1;
+
+    SearchEngine(final SearchRequest request, final SearchListener listener, final BooleanSupplier cancelled) {
+        final EntryMessage m = log.traceEntry(
+                "SearchEngine(request = {}, listener = {}, cancelled = {})", request, listener, cancelled
+        );
+        this.request = request;
+        this.listener = listener;
+        this.cancelled = cancelled;
+        this.query = new EncodedQuery(request);
+        this.scanner = new FileScanner(query, cancelled, request.getFilter().isSkipBinary());
+        this.archiveScanner = new ArchiveScanner(scanner);
+        this.namePattern = request.getFilter().names(request.getExtension());
+        this.executor = ScanScheduler.get().executor(request.getScanMode());
+        final Optional<SearchSnapshot> exact = ResultCache.get().exact(request);
+        this.refinement = !exact.isPresent();
+        this.previous = exact.isPresent() ? exact : ResultCache.get().refinable(request);
+        this.narrowed = request.isNarrowing() && previous.isPresent();
+        this.snapshot = new SearchSnapshot(request);
+        log.traceExit(m);
+    }
+
+    /**
+     * Runs the search blocking until every file has been scanned
+     *
+     * @param onProgress called periodically on the calling thread while the search is running
+     * @return the number of files containing the text
+     * @throws IOException          if the index could not be read, built or updated
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * @throws ExecutionException   if the walk has failed
+     */
+    int run(final Runnable onProgress) throws IOException, InterruptedException, ExecutionException {
+        final EntryMessage m = log.traceEntry("run(onProgress = {})", onProgress);
+        final long started = System.nanoTime();
+        if (isNarrowed()) {
+            narrow(getPrevious().get());
+        } else if (getRequest().isUseIndex()) {
+            final TrigramIndex index = IndexManager.get(
+                    getRequest().getRootFolder(), getRequest().getFilter().selection(getRequest().getExtension())
+            );
+            final Collection<Path> files = index.candidatePaths(getQuery().requiredLiterals());
+            getMetrics().walked(System.nanoTime() - started);
+            for (final Path file : files) {
+                submit(file, Optional.empty());
+            }
+            // the unreadable candidates are not submitted, so they are not waited for
+            total = submitted.get();
+        } else {
+            walk(onProgress);
+        }
+        awaitScans(onProgress);
+        if (!getCancelled().getAsBoolean()) {
+            ResultCache.get().put(getSnapshot());
+        }
+        getMetrics().searchFinished(System.nanoTime() - started);
+        log.debug("run(): {}", getMetrics().summary());
+        return log.traceExit(m, found.get());
+    }
+
+    /**
+     * Tells whether the total number of files to scan is known
+     * @return false while the files are still being walked or submitted
+     * @return false while the walk is still running
+     */
+    boolean isTotalKnown() {
+        return total >= 0;
+    }
+
+    /**
+     * Walks through the file system starting from the root path submitting every found file immediately
+     *
+     * @param onProgress called periodically while the walk is running
+     * @throws InterruptedException if the thread was interrupted while waiting for the walk
+     * @throws ExecutionException   if the walk has failed
+     */
+    private void walk(final Runnable onProgress) throws InterruptedException, ExecutionException {
+        final EntryMessage m = log.traceEntry("walk()");
+        final long started = System.nanoTime();
+        final ForkJoinTask<Void> crawl = new FileCrawler(
+                getRequest().getExtension(), getRequest().getFilter(),
+                (path, attributes) -> submit(path, Optional.of(attributes)), getCancelled()
+        ).crawl(getRequest().getRootFolder());
+        while (true) {
+            try {
+                crawl.get(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                break;
+            } catch (final TimeoutException err) {
+                onProgress.run();
+            }
+        }
+        total = submitted.get();
+        getMetrics().walked(System.nanoTime() - started);
+        log.traceExit(m);
+    }
+
+    /**
+     * Submits the files which contained the text of the cached search instead of walking the tree
+     *
+     * @param cached the snapshot of the search the request extends or repeats
+     */
+    private void narrow(final SearchSnapshot cached) {
+        final EntryMessage m = log.traceEntry("narrow(cached = {})", cached.key());
+        final long started = System.nanoTime();
+        final List<Path> files = new ArrayList<>();
+        cached.getFiles().forEach((path, file) -> {
+            if (!file.getMatches().isEmpty()) {
+                files.add(path);
+            }
+        });
+        getMetrics().walked(System.nanoTime() - started);
+        for (final Path file : files) {
+            submit(file, Optional.empty());
+        }
+        total = submitted.get();
+        log.traceExit(m);
+    }
+
+    /**
+     * Waits until every submitted file has been scanned
+     *
+     * @param onProgress called periodically while waiting
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    private void awaitScans(final Runnable onProgress) throws InterruptedException {
+        final EntryMessage m = log.traceEntry("awaitScans()");
+        while (!pending.tryAcquire(MAX_PENDING_FILES, PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+            onProgress.run();
+        }
+        pending.release(MAX_PENDING_FILES);
+        onProgress.run();
+        log.traceExit(m);
+    }
+
+    /**
+     * Schedules the file to be scanned, waits if too many files are already waiting.
+     * The scan queue only grows here, so its peak is sampled right after the file has been queued.
+     *
+     * @param path   the file to scan
+     * @param walked the attributes read by the walk, nothing for the candidates of the index or the cached search
+     */
+    private void submit(final Path path, final Optional<BasicFileAttributes> walked) {
+        getMetrics().fileWalked();
+        if (!Files.isReadable(path)) {
+            getMetrics().fileSkipped();
+            return;
+        }
+        try {
+            while (!pending.tryAcquire(PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (getCancelled().getAsBoolean()) {
+                    return;
+                }
+            }
+        } catch (final InterruptedException err) {
+            log.error(err);
+            Thread.currentThread().interrupt();
+            return;
+        }
+        submitted.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                scan(path, walked);
+            } finally {
+                completed.incrementAndGet();
+                pending.release();
+            }
+        });
+        getMetrics().sampleQueue(ScanScheduler.get().scanQueueDepth());
+    }
+
+    /**
+     * Looks for the text in the provided file and passes the matches to the listener if there are any.
+     * Every entry of an archive containing the text is passed to the listener on its own.
+     * Unchanged files known from the cached search are not scanned when the outcome is already known.
+     * The candidates of the index or the cached search have not been filtered by the walk,
+     * so their attributes are read and the filter is applied here.
+     *
+     * @param path   the path to be checked
+     * @param walked the attributes read by the walk, nothing for the candidates of the index or the cached search
+     */
+    private void scan(final Path path, final Optional<BasicFileAttributes> walked) {
+        if (getCancelled().getAsBoolean()) {
+            return;
+        }
+        try {
+            final BasicFileAttributes attributes = walked.isPresent()
+                    ? walked.get() : Files.readAttributes(path, BasicFileAttributes.class);
+            final PathFilter filter = getRequest().getFilter();
+            if (!walked.isPresent() && (!filter.accepts(attributes)
+                    || !ArchiveScanner.matches(getNamePattern(), path.getFileName())
+                    || filter.excludesWithParents(getRequest().getRootFolder(), path))) {
+                getMetrics().fileSkipped();
+                return;
+            }
+            final Optional<SearchSnapshot.File> known = getPrevious()
+                    .flatMap(cached -> cached.unchanged(path, attributes))
+                    .filter(file -> !isRefinement() || file.getMatches().isEmpty());
+            final List<FileMatches> matches;
+            if (known.isPresent()) {
+                getMetrics().fileReused();
+                matches = isRefinement() ? Collections.emptyList() : known.get().getMatches();
+            } else {
+                matches = find(path, attributes);
+            }
+            getSnapshot().record(path, attributes, matches);
+            for (final FileMatches entry : matches) {
+                found.incrementAndGet();
+                getMetrics().fileMatched();
+                getListener().onMatch(entry);
+            }
+        } catch (final IOException err) {
+            getMetrics().fileSkipped();
+            log.error("scan(path = {})", path, err);
+        } catch (final InterruptedException err) {
+            log.error(err);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scans the file, virtual threads have to wait for a free open file slot first.
+     * A file found to be binary is counted as skipped rather than scanned.
+     *
+     * @param path       the file to scan
+     * @param attributes the attributes of the file
+     * @return the matches of the file or of every archive entry containing the text
+     * @throws IOException          if the file could not be read
+     * @throws InterruptedException if the thread was interrupted while waiting for the slot
+     */
+    private List<FileMatches> find(final Path path, final BasicFileAttributes attributes)
+            throws IOException, InterruptedException {
+        final Semaphore openFiles = ScanScheduler.get().getOpenFiles();
+        final boolean limited = getRequest().getScanMode() == ScanMode.VIRTUAL_THREADS;
+        if (limited) {
+            openFiles.acquire();
+        }
+        try {
+            final long started = System.nanoTime();
+            final List<FileMatches> searched;
+            if (ArchiveScanner.isArchive(path)) {
+                searched = getArchiveScanner().find(path, getNamePattern(), getRequest().getMaxMatchesPerFile());
+            } else {
+                final FileMatches matches = getScanner().find(path, getRequest().getMaxMatchesPerFile());
+                if (matches.isBinary()) {
+                    getMetrics().fileSkipped();
+                    log.debug("find(path = {}): skipped as binary", path);
+                    return Collections.emptyList();
+                }
+                searched = Collections.singletonList(matches);
+            }
+            final long elapsed = System.nanoTime() - started;
+            final long bytes = searched.stream().mapToLong(FileMatches::getScanned).sum();
+            final List<FileMatches> result = searched.stream()
+                    .filter(matches -> !matches.isEmpty())
+                    .collect(Collectors.toList());
+            getMetrics().fileScanned(bytes, elapsed);
+            if (log.isTraceEnabled()) {
+                log.trace("find(path = {}): {} of {} bytes, {} matching, {} us",
+                        path, bytes, attributes.size(), result.size(), TimeUnit.NANOSECONDS.toMicros(elapsed));
+            }
+            return result;
+        } finally {
+            if (limited) {
+                openFiles.release();
+            }
+        }
+    }
+}
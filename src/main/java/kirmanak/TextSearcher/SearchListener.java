@@ -0,0 +1,14 @@
+package kirmanak.TextSearcher;
+
+/**
+ * Receives the results of a {@link SearchEngine} run. It is called concurrently from the scanning threads.
+ */
+@FunctionalInterface
+interface SearchListener {
+    /**
+     * Called once for every file containing the text
+     *
+     * @param matches the file and the locations of the text in it
+     */
+    void onMatch(FileMatches matches);
+}
@@ -0,0 +1,295 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the searches.
+ * Every search has its own metrics for the summary shown when it is over, everything recorded there is added
+ * to the totals of the application as well, which are published over JMX by {@link SearchMetricsMXBean}.
+ * The tree and the viewer are shared by the searches, so their latencies are recorded in the totals only.
+ * The counters are LongAdders, so the scanning threads do not contend on them.
+ */
+@Log4j2
+@Getter
+class SearchMetrics {
+    private static final String OBJECT_NAME = "kirmanak.TextSearcher:type=SearchMetrics";
+    private static final SearchMetrics TOTAL = register(new SearchMetrics(null));
+
+    private final SearchMetrics parent;
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private final LongAdder filesWalked = new LongAdder();
+    private final LongAdder filesSkipped = new LongAdder();
+    private final LongAdder filesReused = new LongAdder();
+    private final LongAdder filesScanned = new LongAdder();
+    private final LongAdder matchingFiles = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAccumulator peakQueueDepth = new LongAccumulator(Math::max, 0);
+    private final LatencyHistogram walk = new LatencyHistogram();
+    private final LatencyHistogram scan = new LatencyHistogram();
+    private final LatencyHistogram tree = new LatencyHistogram();
+    private final LatencyHistogram view = new LatencyHistogram();
+
+    private SearchMetrics(final SearchMetrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Gets the totals of the application
+     *
+     * @return the metrics of all searches
+     */
+    static SearchMetrics total() {
+        return TOTAL;
+    }
+
+    /**
+     * Creates the metrics of a single search adding up to the totals
+     *
+     * @return the new metrics
+     */
+    static SearchMetrics forSearch() {
+        return new SearchMetrics(TOTAL);
+    }
+
+    /**
+     * Publishes the totals over JMX, a failure only disables the publishing
+     *
+     * @param metrics the totals
+     * @return the same metrics
+     */
+    private static SearchMetrics register(final SearchMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(metrics), new ObjectName(OBJECT_NAME));
+        } catch (final JMException err) {
+            log.warn("register(): the metrics are not published", err);
+        }
+        return metrics;
+    }
+
+    /**
+     * Counts a file found by the walk or the index
+     */
+    void fileWalked() {
+        for (SearchMetrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.filesWalked.increment();
+        }
+    }
+
+    /**
+     * Counts a file which could not be read
+     */
+    void fileSkipped() {
+        for (SearchMetrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.filesSkipped.increment();
+        }
+    }
+
+    /**
+     * Counts a file whose outcome has been taken from the cache
+     */
+    void fileReused() {
+        for (SearchMetrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.filesReused.increment();
+        }
+    }
+
+    /**
+     * Counts a scanned file
+     *
+     * @param bytes the number of bytes searched, of the decompressed entries for an archive
+     * @param nanos the time the scan took
+     */
+    void fileScanned(final long bytes, final long nanos) {
+        for (SearchMetrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.filesScanned.increment();
+            metrics.bytesRead.add(bytes);
+            metrics.scan.record(nanos);
+        }
+    }
+
+    /**
+     * Counts a file or an archive entry containing the query
+     */
+    void fileMatched() {
+        for (SearchMetrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.matchingFiles.increment();
+        }
+    }
+
+    /**
+     * Records the time it took to walk the tree or to query the index
+     *
+     * @param nanos the walk duration
+     */
+    void walked(final long nanos) {
+        for (SearchMetrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.walk.record(nanos);
+        }
+    }
+
+    /**
+     * Records the number of files waiting for a scan thread, sampled whenever a file is queued
+     *
+     * @param depth the current queue length
+     */
+    void sampleQueue(final long depth) {
+        for (SearchMetrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.peakQueueDepth.accumulate(depth);
+        }
+    }
+
+    /**
+     * Counts a finished or cancelled search
+     *
+     * @param nanos the search duration
+     */
+    void searchFinished(final long nanos) {
+        for (SearchMetrics metrics = this; metrics != null; metrics = metrics.parent) {
+            metrics.searches.increment();
+            metrics.searchNanos.add(nanos);
+        }
+    }
+
+    /**
+     * Gets the average scan speed over the time the searches were running
+     *
+     * @return megabytes per second, 0 before the first search is over
+     */
+    double throughput() {
+        final long nanos = searchNanos.sum();
+        return nanos == 0 ? 0 : bytesRead.sum() / 1e6 / (nanos / 1e9);
+    }
+
+    /**
+     * Describes the search in a single line
+     *
+     * @return the counters, the throughput and the latencies
+     */
+    String summary() {
+        return String.format(
+                "%d matching files; %d scanned, %d reused, %d skipped of %d found; "
+                        + "%.1f MB in %.2f s (%.1f MB/s); walk %.2f s; scan %s; peak queue %d",
+                matchingFiles.sum(), filesScanned.sum(), filesReused.sum(), filesSkipped.sum(), filesWalked.sum(),
+                bytesRead.sum() / 1e6, searchNanos.sum() / 1e9, throughput(), walk.totalNanos() / 1e9,
+                scan.describe(), peakQueueDepth.get()
+        );
+    }
+
+    /**
+     * Publishes the totals and the current pool queues
+     */
+    @RequiredArgsConstructor
+    private static class Bean implements SearchMetricsMXBean {
+        private final SearchMetrics metrics;
+
+        @Override
+        public long getSearches() {
+            return metrics.searches.sum();
+        }
+
+        @Override
+        public long getFilesWalked() {
+            return metrics.filesWalked.sum();
+        }
+
+        @Override
+        public long getFilesSkipped() {
+            return metrics.filesSkipped.sum();
+        }
+
+        @Override
+        public long getFilesReused() {
+            return metrics.filesReused.sum();
+        }
+
+        @Override
+        public long getFilesScanned() {
+            return metrics.filesScanned.sum();
+        }
+
+        @Override
+        public long getMatchingFiles() {
+            return metrics.matchingFiles.sum();
+        }
+
+        @Override
+        public long getBytesRead() {
+            return metrics.bytesRead.sum();
+        }
+
+        @Override
+        public double getScanThroughputMegabytesPerSecond() {
+            return metrics.throughput();
+        }
+
+        @Override
+        public long getWalkP50Micros() {
+            return metrics.walk.percentileMicros(0.5);
+        }
+
+        @Override
+        public long getWalkMaxMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(metrics.walk.maxNanos());
+        }
+
+        @Override
+        public long getScanP50Micros() {
+            return metrics.scan.percentileMicros(0.5);
+        }
+
+        @Override
+        public long getScanP99Micros() {
+            return metrics.scan.percentileMicros(0.99);
+        }
+
+        @Override
+        public long getScanMaxMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(metrics.scan.maxNanos());
+        }
+
+        @Override
+        public long getTreeP50Micros() {
+            return metrics.tree.percentileMicros(0.5);
+        }
+
+        @Override
+        public long getTreeP99Micros() {
+            return metrics.tree.percentileMicros(0.99);
+        }
+
+        @Override
+        public long getViewP50Micros() {
+            return metrics.view.percentileMicros(0.5);
+        }
+
+        @Override
+        public long getViewP99Micros() {
+            return metrics.view.percentileMicros(0.99);
+        }
+
+        @Override
+        public int getScanQueueDepth() {
+            return ScanScheduler.get().scanQueueDepth();
+        }
+
+        @Override
+        public long getWalkQueueDepth() {
+            return ScanScheduler.get().getWalkPool().getQueuedTaskCount();
+        }
+
+        @Override
+        public long getSplitQueueDepth() {
+            return ScanScheduler.get().getSplitPool().getQueuedTaskCount();
+        }
+    }
+}
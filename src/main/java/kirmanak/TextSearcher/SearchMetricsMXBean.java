@@ -0,0 +1,47 @@
+package kirmanak.TextSearcher;
+
+/**
+ * The totals of all searches since the start, published as "kirmanak.TextSearcher:type=SearchMetrics".
+ * JMX requires the interface to be public. Latencies are in microseconds, percentiles are bucket upper bounds.
+ */
+public interface SearchMetricsMXBean {
+    long getSearches();
+
+    long getFilesWalked();
+
+    long getFilesSkipped();
+
+    long getFilesReused();
+
+    long getFilesScanned();
+
+    long getMatchingFiles();
+
+    long getBytesRead();
+
+    double getScanThroughputMegabytesPerSecond();
+
+    long getWalkP50Micros();
+
+    long getWalkMaxMicros();
+
+    long getScanP50Micros();
+
+    long getScanP99Micros();
+
+    long getScanMaxMicros();
+
+    long getTreeP50Micros();
+
+    long getTreeP99Micros();
+
+    long getViewP50Micros();
+
+    long getViewP99Micros();
+
+    int getScanQueueDepth();
+
+    long getWalkQueueDepth();
+
+    long getSplitQueueDepth();
+}
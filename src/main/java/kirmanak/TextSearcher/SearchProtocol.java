@@ -0,0 +1,236 @@
+package kirmanak.TextSearcher;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The binary protocol spoken over the socket of the {@link SearchServer}.
+ * The client writes the magic number, the version and a single request, the server answers with a stream of frames:
+ * a matching file as soon as it is scanned, the progress several times a second and finally the outcome.
+ * The client closes the connection to cancel the search, the server notices it on the next frame it writes.
+ * Strings are written as an int length followed by UTF-8 bytes.
+ * A request the server cannot read is answered with a failure frame telling why.
+ */
+final class SearchProtocol {
+    static final int MAGIC = 0x54535351;
+    static final int VERSION = 1;
+    static final byte MATCH = 1;
+    static final byte PROGRESS = 2;
+    static final byte DONE = 3;
+    static final byte FAILED = 4;
+    private static final int MAX_STRING_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_STRINGS = 64 * 1024;
+
+    private SearchProtocol() {
+    }
+
+    /**
+     * Gets the socket the server listens on, taken from the "textsearcher.socket" system property.
+     * The directory of the socket has to be accessible only to the user running the server.
+     *
+     * @return the path of the Unix domain socket
+     */
+    static Path socketPath() {
+        final String path = System.getProperty("textsearcher.socket");
+        return Objects.isNull(path)
+                ? Paths.get(System.getProperty("user.home"), ".TextSearcher", "run", "daemon.sock") : Paths.get(path);
+    }
+
+    /**
+     * Writes the request, the root folder is made absolute as the server runs in another folder
+     *
+     * @param out     the stream to write to
+     * @param request the request to send
+     * @throws IOException if the stream failed
+     */
+    static void writeRequest(final DataOutput out, final SearchRequest request) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, request.getRootFolder().toAbsolutePath().normalize().toString());
+        writeString(out, request.getExtension());
+        writeString(out, request.getText());
+        writeString(out, request.getQueryMode().name());
+        out.writeBoolean(request.isIgnoreCase());
+        out.writeBoolean(request.isWholeWord());
+        out.writeBoolean(request.isUseIndex());
+        out.writeBoolean(request.isNarrowing());
+        writeString(out, request.getScanMode().name());
+        out.writeInt(request.getMaxMatchesPerFile());
+        final PathFilter filter = request.getFilter();
+        writeStrings(out, filter.getIncludes());
+        writeStrings(out, filter.getExcludes());
+        out.writeLong(filter.getMinSize());
+        out.writeLong(filter.getMaxSize());
+        out.writeLong(Objects.isNull(filter.getModifiedWithin()) ? -1 : filter.getModifiedWithin().toMillis());
+        out.writeBoolean(filter.isSkipBinary());
+    }
+
+    /**
+     * Reads the request written by {@link #writeRequest(DataOutput, SearchRequest)}
+     *
+     * @param in the stream to read from
+     * @return the request
+     * @throws IOException if the stream failed, the client speaks another protocol or the request is malformed
+     */
+    static SearchRequest readRequest(final DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Unsupported protocol");
+        }
+        final int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException(
+                    String.format("Unsupported protocol version %d, the server speaks %d", version, VERSION)
+            );
+        }
+        try {
+            return readFields(in);
+        } catch (final IllegalArgumentException err) {
+            // an unknown mode name, an invalid path or glob
+            throw new IOException("Malformed request: " + err.getMessage(), err);
+        }
+    }
+
+    /**
+     * Reads the fields of the request following the version
+     *
+     * @param in the stream to read from
+     * @return the request
+     * @throws IOException if the stream failed
+     */
+    private static SearchRequest readFields(final DataInput in) throws IOException {
+        final Path root = Paths.get(readString(in));
+        final String extension = readString(in);
+        final String text = readString(in);
+        final QueryMode mode = QueryMode.valueOf(readString(in));
+        final boolean ignoreCase = in.readBoolean();
+        final boolean wholeWord = in.readBoolean();
+        final boolean useIndex = in.readBoolean();
+        final boolean narrowing = in.readBoolean();
+        final ScanMode scanMode = ScanMode.valueOf(readString(in));
+        final int maxMatchesPerFile = in.readInt();
+        final List<String> includes = readStrings(in);
+        final List<String> excludes = readStrings(in);
+        final long minSize = in.readLong();
+        final long maxSize = in.readLong();
+        final long modifiedWithin = in.readLong();
+        final PathFilter filter = new PathFilter(includes, excludes, minSize, maxSize,
+                modifiedWithin < 0 ? null : Duration.ofMillis(modifiedWithin), in.readBoolean());
+        return new SearchRequest(root, extension, text, mode, ignoreCase, wholeWord, useIndex, narrowing, scanMode,
+                maxMatchesPerFile, filter);
+    }
+
+    /**
+     * Writes the frame of a file containing the text
+     *
+     * @param out     the stream to write to
+     * @param matches the matches of the file
+     * @throws IOException if the stream failed
+     */
+    static void writeMatches(final DataOutput out, final FileMatches matches) throws IOException {
+        out.writeByte(MATCH);
+        writeString(out, matches.getPath().toString());
+        writeString(out, matches.getEncoding().name());
+        out.writeInt(matches.getLimit());
+        out.writeInt(matches.getCount());
+        for (int i = 0; i < matches.getCount(); i++) {
+            out.writeLong(matches.getOffsets()[i]);
+            out.writeInt(matches.getLines()[i]);
+            out.writeInt(matches.getColumns()[i]);
+        }
+    }
+
+    /**
+     * Reads the rest of the frame written by {@link #writeMatches(DataOutput, FileMatches)}.
+     * The server reports the paths under the absolute root folder, they are moved under the root of the client.
+     *
+     * @param in   the stream to read from, the frame type has been read already
+     * @param root the root folder of the request as the client has given it
+     * @return the matches of the file
+     * @throws IOException if the stream failed
+     */
+    static FileMatches readMatches(final DataInput in, final Path root) throws IOException {
+        final Path remote = Paths.get(readString(in));
+        final Path absolute = root.toAbsolutePath().normalize();
+        final Path path = remote.startsWith(absolute) ? root.resolve(absolute.relativize(remote)) : remote;
+        final TextEncoding encoding = TextEncoding.valueOf(readString(in));
+        final FileMatches matches = new FileMatches(path, in.readInt());
+        matches.setEncoding(encoding);
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            matches.add(in.readLong(), in.readInt(), in.readInt());
+        }
+        matches.trim();
+        return matches;
+    }
+
+    /**
+     * Writes a string as int length followed by UTF-8 bytes
+     *
+     * @param out    the stream to write to
+     * @param string the string to write
+     * @throws IOException if the stream failed
+     */
+    static void writeString(final DataOutput out, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}
+     *
+     * @param in the stream to read from
+     * @return the read string
+     * @throws IOException if the stream failed or the length is out of bounds
+     */
+    static String readString(final DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a list of strings preceded by its size
+     *
+     * @param out     the stream to write to
+     * @param strings the strings to write
+     * @throws IOException if the stream failed
+     */
+    private static void writeStrings(final DataOutput out, final List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (final String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    /**
+     * Reads a list written by {@link #writeStrings(DataOutput, List)}
+     *
+     * @param in the stream to read from
+     * @return the read strings
+     * @throws IOException if the stream failed or a length is out of bounds
+     */
+    private static List<String> readStrings(final DataInput in) throws IOException {
+        final int size = in.readInt();
+        if (size < 0 || size > MAX_STRINGS) {
+            throw new IOException("Invalid list size " + size);
+        }
+        final List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+}
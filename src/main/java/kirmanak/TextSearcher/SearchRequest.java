@@ -0,0 +1,29 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.nio.file.Path;
+
+/**
+ * Parameters of a single search.
+ * A narrowing search scans only the files which contained the text of a cached search it extends,
+ * the directory walk is skipped, so the files created or changed to contain the text since then are not found.
+ */
+@Getter
+@ToString
+@RequiredArgsConstructor
+class SearchRequest {
+    private final Path rootFolder;
+    private final String extension;
+    private final String text;
+    private final QueryMode queryMode;
+    private final boolean ignoreCase;
+    private final boolean wholeWord;
+    private final boolean useIndex;
+    private final boolean narrowing;
+    private final ScanMode scanMode;
+    private final int maxMatchesPerFile;
+    private final PathFilter filter;
+}
@@ -0,0 +1,246 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The long-running search process started with {@value #FLAG}. It serves the {@link SearchProtocol} requests
+ * of the command line and window clients over a Unix domain socket, so all of them share the opened indexes,
+ * the {@link ResultCache} and the warm thread pools of a single process. Every connection is served on its own
+ * virtual thread, the searches themselves run on the shared {@link ScanScheduler} as usual.
+ * The socket is created in a directory accessible only to its owner, the server refuses to start in any other one.
+ * The files are read with the permissions of the server.
+ */
+@Log4j2
+@Getter
+@RequiredArgsConstructor
+class SearchServer {
+    static final String FLAG = "--server";
+    private static final Set<PosixFilePermission> PRIVATE = PosixFilePermissions.fromString("rwx------");
+
+    private final Path socket;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Runs the server until the process is stopped
+     *
+     * @param args the command line arguments following {@link #FLAG}, there must be none
+     * @return the process exit code
+     */
+    static int run(final String[] args) {
+        final EntryMessage m = log.traceEntry("run(args = {})", (Object) args);
+        if (args.length > 0) {
+            System.err.println("Usage: TextSearcher --server, the socket is set by -Dtextsearcher.socket=PATH");
+            return log.traceExit(m, 2);
+        }
+        try {
+            new SearchServer(SearchProtocol.socketPath()).serve();
+            return log.traceExit(m, 0);
+        } catch (final IOException err) {
+            System.err.println(err.getMessage());
+            return log.traceExit(m, 2);
+        } finally {
+            IndexManager.closeAll();
+            ScanScheduler.get().shutdown();
+        }
+    }
+
+    /**
+     * Listens on the socket accepting clients, a stale socket file of a stopped server is replaced
+     *
+     * @throws IOException if the socket could not be created, its directory is accessible to other users
+     *                     or another server is already listening on it
+     */
+    void serve() throws IOException {
+        final EntryMessage m = log.traceEntry("serve()");
+        checkDirectory(socket.toAbsolutePath().getParent());
+        if (Files.exists(socket)) {
+            final Optional<SearchClient> running = SearchClient.connect(socket);
+            running.ifPresent(SearchClient::close);
+            if (running.isPresent()) {
+                throw new IOException(String.format("The server is already running on %s", socket));
+            }
+            Files.delete(socket);
+        }
+        try (final ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(new Thread(this::removeSocket));
+            System.err.printf("Listening on %s%n", socket);
+            while (server.isOpen()) {
+                final SocketChannel client = server.accept();
+                connections.execute(() -> handle(client));
+            }
+        } finally {
+            removeSocket();
+        }
+        log.traceExit(m);
+    }
+
+    /**
+     * Creates the directory of the socket accessible only to its owner or checks the existing one,
+     * so nobody else can connect to the socket from the moment it is bound
+     *
+     * @param directory the directory of the socket
+     * @throws IOException if the directory could not be created or is accessible to other users
+     */
+    private static void checkDirectory(final Path directory) throws IOException {
+        final EntryMessage m = log.traceEntry("checkDirectory(directory = {})", directory);
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory);
+            log.traceExit(m);
+            return;
+        }
+        if (!Files.exists(directory)) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PRIVATE));
+        }
+        final UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!Files.getOwner(directory).equals(user) || !Files.getPosixFilePermissions(directory).equals(PRIVATE)) {
+            throw new IOException(String.format(
+                    "The socket directory %s must be owned by %s and have rwx------ permissions", directory, user
+            ));
+        }
+        log.traceExit(m);
+    }
+
+    /**
+     * Reads a single request and streams its results back to the client.
+     * The search is cancelled as soon as a frame could not be written, i.e. the client has gone.
+     *
+     * @param channel the connection of the client
+     */
+    private void handle(final SocketChannel channel) {
+        final EntryMessage m = log.traceEntry("handle(channel = {})", channel);
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        try (channel; final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel)));
+             final DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            final SearchRequest request;
+            try {
+                request = SearchProtocol.readRequest(in);
+            } catch (final EOFException err) {
+                // a client checking whether the server is running closes the connection without a request
+                log.debug("handle(): no request", err);
+                log.traceExit(m);
+                return;
+            } catch (final IOException err) {
+                log.warn("handle(): unreadable request", err);
+                send(out, cancelled, frame -> {
+                    frame.writeByte(SearchProtocol.FAILED);
+                    SearchProtocol.writeString(frame, String.valueOf(err.getMessage()));
+                });
+                log.traceExit(m);
+                return;
+            }
+            log.info("handle(): {}", request);
+            try {
+                final SearchEngine engine = new SearchEngine(request, matches -> send(out, cancelled, frame ->
+                        SearchProtocol.writeMatches(frame, matches)
+                ), cancelled::get);
+                final int found = engine.run(() -> send(out, cancelled, frame -> {
+                    frame.writeByte(SearchProtocol.PROGRESS);
+                    frame.writeLong(engine.getCompleted().get());
+                    frame.writeLong(engine.isTotalKnown() ? engine.getTotal() : -1);
+                    frame.writeLong(engine.getSubmitted().get());
+                }));
+                send(out, cancelled, frame -> {
+                    frame.writeByte(SearchProtocol.DONE);
+                    frame.writeInt(found);
+                    SearchProtocol.writeString(frame, engine.getMetrics().summary());
+                });
+            } catch (final IOException | ExecutionException | IllegalArgumentException err) {
+                log.error("handle(request = {})", request, err);
+                send(out, cancelled, frame -> {
+                    frame.writeByte(SearchProtocol.FAILED);
+                    SearchProtocol.writeString(frame, String.valueOf(err.getMessage()));
+                });
+            }
+        } catch (final IOException err) {
+            if (cancelled.get()) {
+                // the buffered rest of the last frame could not be flushed to the gone client
+                log.debug("handle(): the client has gone", err);
+            } else {
+                log.error("handle()", err);
+            }
+        } catch (final InterruptedException err) {
+            log.error(err);
+            Thread.currentThread().interrupt();
+        }
+        log.traceExit(m);
+    }
+
+    /**
+     * Writes and flushes a frame, frames of the scanning threads are never interleaved.
+     * A failed write cancels the search instead of failing the scan.
+     *
+     * @param out       the stream of the client
+     * @param cancelled the cancellation flag of the search
+     * @param frame     writes the frame
+     */
+    private static void send(final DataOutputStream out, final AtomicBoolean cancelled, final Frame frame) {
+        if (cancelled.get()) {
+            return;
+        }
+        synchronized (out) {
+            try {
+                frame.write(out);
+                out.flush();
+            } catch (final IOException err) {
+                log.debug("send(): the client has gone", err);
+                cancelled.set(true);
+            }
+        }
+    }
+
+    /**
+     * Deletes the socket file so the clients do not try to connect to a stopped server
+     */
+    private void removeSocket() {
+        try {
+            Files.deleteIfExists(socket);
+        } catch (final IOException err) {
+            log.error("removeSocket()", err);
+        }
+    }
+
+    /**
+     * Writes a single frame of the protocol
+     */
+    @FunctionalInterface
+    private interface Frame {
+        /**
+         * Writes the frame to the stream
+         *
+         * @param out the stream of the client
+         * @throws IOException if the stream failed
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,225 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The outcome of a finished search: the size and modification time of every scanned file
+ * together with the matches of the files containing the text, an archive may have several matching entries
+ */
+@Log4j2
+@Getter
+class SearchSnapshot {
+    private static final int MAGIC = 0x54535253;
+    private static final int VERSION = 6;
+
+    private final String root;
+    private final String extension;
+    private final QueryMode queryMode;
+    private final boolean ignoreCase;
+    private final boolean wholeWord;
+    private final String text;
+    private final int maxMatchesPerFile;
+    private final boolean skipBinary;
+    private final String filter;
+    private final Map<Path, File> files = new ConcurrentHashMap<>();
+
+    SearchSnapshot(final String root, final String extension, final QueryMode queryMode, final boolean ignoreCase,
+                   final boolean wholeWord, final String text, final int maxMatchesPerFile, final boolean skipBinary,
+                   final String filter) {
+        this.root = root;
+        this.extension = extension;
+        this.queryMode = queryMode;
+        this.ignoreCase = ignoreCase;
+        this.wholeWord = wholeWord;
+        this.text = text;
+        this.maxMatchesPerFile = maxMatchesPerFile;
+        this.skipBinary = skipBinary;
+        this.filter = filter;
+    }
+
+    SearchSnapshot(final SearchRequest request) {
+        this(
+                request.getRootFolder().toAbsolutePath().normalize().toString(), request.getExtension(),
+                request.getQueryMode(), request.isIgnoreCase(), request.isWholeWord(), request.getText(),
+                request.getMaxMatchesPerFile(), request.getFilter().isSkipBinary(), request.getFilter().toString()
+        );
+    }
+
+    /**
+     * Builds the key identifying the snapshots of the same search.
+     * A skipped binary file is recorded as one without matches, and a narrowed search scans only the files
+     * of the snapshot, so the snapshots taken under other filters are never reused.
+     *
+     * @return the root, the extension, the limit, the binary files mode, the filter, the query mode and options
+     * and the text joined together
+     */
+    String key() {
+        return String.join("\n", root, extension, Integer.toString(maxMatchesPerFile),
+                Boolean.toString(skipBinary), filter, queryMode.name(), Boolean.toString(ignoreCase),
+                Boolean.toString(wholeWord), text);
+    }
+
+    /**
+     * Remembers the outcome of a scanned file
+     *
+     * @param path       the scanned file
+     * @param attributes the attributes read before the scan
+     * @param matches    the matches of the file or its entries, empty if the file does not contain the text
+     */
+    void record(final Path path, final BasicFileAttributes attributes, final List<FileMatches> matches) {
+        files.put(path, new File(attributes.size(), attributes.lastModifiedTime().toMillis(), matches));
+    }
+
+    /**
+     * Gets the outcome of the file if it has not changed since it was scanned
+     *
+     * @param path       the file to look for
+     * @param attributes the current attributes of the file
+     * @return the outcome or nothing if the file is unknown or has changed
+     */
+    Optional<File> unchanged(final Path path, final BasicFileAttributes attributes) {
+        return Optional.ofNullable(files.get(path)).filter(file -> file.size == attributes.size()
+                && file.modified == attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Writes the snapshot to the file replacing it atomically
+     *
+     * @param target the file to write to
+     * @throws IOException if the file could not be written
+     */
+    void write(final Path target) throws IOException {
+        final EntryMessage m = log.traceEntry("write(target = {})", target);
+        Files.createDirectories(target.getParent());
+        final Path temporary = Files.createTempFile(target.getParent(), "cache", ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, key());
+            out.writeInt(files.size());
+            for (final Map.Entry<Path, File> entry : files.entrySet()) {
+                final File file = entry.getValue();
+                writeString(out, entry.getKey().toString());
+                out.writeLong(file.size);
+                out.writeLong(file.modified);
+                out.writeInt(file.matches.size());
+                for (final FileMatches matches : file.matches) {
+                    writeString(out, matches.getPath().toString());
+                    writeString(out, matches.getEncoding().name());
+                    out.writeInt(matches.getCount());
+                    for (int i = 0; i < matches.getCount(); i++) {
+                        out.writeLong(matches.getOffsets()[i]);
+                        out.writeInt(matches.getLines()[i]);
+                        out.writeInt(matches.getColumns()[i]);
+                    }
+                }
+            }
+        } catch (final IOException err) {
+            Files.deleteIfExists(temporary);
+            throw err;
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.traceExit(m);
+    }
+
+    /**
+     * Reads the snapshot written by {@link #write(Path)}
+     *
+     * @param source the file to read
+     * @param key    the expected key of the snapshot
+     * @return the snapshot or nothing if the file belongs to another search or has another format
+     * @throws IOException if the file could not be read
+     */
+    static Optional<SearchSnapshot> read(final Path source, final String key) throws IOException {
+        final EntryMessage m = log.traceEntry("read(source = {}, key = {})", source, key);
+        try (final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return log.traceExit(m, Optional.empty());
+            }
+            final String[] parts = readString(in).split("\n", 9);
+            final SearchSnapshot snapshot = new SearchSnapshot(
+                    parts[0], parts[1], QueryMode.valueOf(parts[5]), Boolean.parseBoolean(parts[6]),
+                    Boolean.parseBoolean(parts[7]), parts[8], Integer.parseInt(parts[2]),
+                    Boolean.parseBoolean(parts[3]), parts[4]
+            );
+            if (!snapshot.key().equals(key)) {
+                return log.traceExit(m, Optional.empty());
+            }
+            final int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                final Path path = Paths.get(readString(in));
+                final long size = in.readLong();
+                final long modified = in.readLong();
+                final int entryCount = in.readInt();
+                final List<FileMatches> entries = new ArrayList<>(entryCount);
+                for (int j = 0; j < entryCount; j++) {
+                    final FileMatches matches = new FileMatches(Paths.get(readString(in)), snapshot.maxMatchesPerFile);
+                    matches.setEncoding(TextEncoding.valueOf(readString(in)));
+                    final int count = in.readInt();
+                    for (int k = 0; k < count; k++) {
+                        matches.add(in.readLong(), in.readInt(), in.readInt());
+                    }
+                    matches.trim();
+                    entries.add(matches);
+                }
+                snapshot.files.put(path, new File(size, modified, entries));
+            }
+            return log.traceExit(m, Optional.of(snapshot));
+        }
+    }
+
+    /**
+     * Writes a string as int length followed by UTF-8 bytes
+     *
+     * @param out    the stream to write to
+     * @param string the string to write
+     * @throws IOException if the stream failed
+     */
+    private static void writeString(final DataOutput out, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}
+     *
+     * @param in the stream to read from
+     * @return the read string
+     * @throws IOException if the stream failed
+     */
+    private static String readString(final DataInput in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The fingerprint and the matches of a scanned file
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static class File {
+        private final long size;
+        private final long modified;
+        private final List<FileMatches> matches;
+    }
+}
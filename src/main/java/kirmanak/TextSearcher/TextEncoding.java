@@ -0,0 +1,328 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The encodings the searched files are recognized in, see {@link #detect(ByteBuffer, int, int)}.
+ * A line feed is a 0x0A byte in all of them, paired with a zero byte in UTF-16,
+ * so lines are found in the raw bytes without decoding them.
+ */
+@Getter
+@RequiredArgsConstructor
+enum TextEncoding {
+    /**
+     * UTF-8 with or without the byte order mark, ASCII text is taken for UTF-8 as well
+     */
+    UTF_8(StandardCharsets.UTF_8, 0, 1),
+    /**
+     * UTF-16 with the low byte first, e.g. the logs written by Windows services
+     */
+    UTF_16LE(StandardCharsets.UTF_16LE, 0, 2),
+    /**
+     * UTF-16 with the high byte first
+     */
+    UTF_16BE(StandardCharsets.UTF_16BE, 1, 1),
+    /**
+     * ISO-8859-1, any text which is not valid UTF-8, every byte is decoded as a character
+     */
+    LATIN_1(StandardCharsets.ISO_8859_1, 0, 1);
+
+    private static final int MIN_UTF_16_SHARE = 8;
+    private static final int REPLACEMENT = 0xFFFD;
+
+    private final Charset charset;
+    /**
+     * The number of bytes of the line feed before its 0x0A byte
+     */
+    private final int lineFeedHead;
+    /**
+     * The number of bytes from the 0x0A byte of the line feed to the start of the next line
+     */
+    private final int lineFeedTail;
+
+    /**
+     * Guesses the encoding of the file from its first bytes.
+     * A byte order mark decides it, otherwise zero bytes on one side of the byte pairs mean UTF-16,
+     * valid UTF-8 sequences mean UTF-8 and anything else is taken for Latin-1.
+     *
+     * @param buffer the buffer containing the first bytes of the file
+     * @param from   the index of the first byte
+     * @param to     the index after the last byte of the sample
+     * @return the most likely encoding
+     */
+    static TextEncoding detect(final ByteBuffer buffer, final int from, final int to) {
+        if (to - from >= 3 && (buffer.get(from) & 0xFF) == 0xEF && (buffer.get(from + 1) & 0xFF) == 0xBB
+                && (buffer.get(from + 2) & 0xFF) == 0xBF) {
+            return UTF_8;
+        }
+        if (to - from >= 2) {
+            final int first = buffer.get(from) & 0xFF;
+            final int second = buffer.get(from + 1) & 0xFF;
+            if (first == 0xFF && second == 0xFE) {
+                return UTF_16LE;
+            }
+            if (first == 0xFE && second == 0xFF) {
+                return UTF_16BE;
+            }
+        }
+        int even = 0;
+        int odd = 0;
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == 0) {
+                if ((i - from & 1) == 0) {
+                    even++;
+                } else {
+                    odd++;
+                }
+            }
+        }
+        if (odd > 4 * even && odd * MIN_UTF_16_SHARE >= to - from) {
+            return UTF_16LE;
+        }
+        if (even > 4 * odd && even * MIN_UTF_16_SHARE >= to - from) {
+            return UTF_16BE;
+        }
+        return isUtf8(buffer, from, to) ? UTF_8 : LATIN_1;
+    }
+
+    /**
+     * Checks that the bytes are valid UTF-8, a sequence cut by the end of the sample is accepted
+     *
+     * @param buffer the buffer containing the bytes
+     * @param from   the index of the first byte
+     * @param to     the index after the last byte
+     * @return true if there are no invalid sequences
+     */
+    private static boolean isUtf8(final ByteBuffer buffer, final int from, final int to) {
+        int i = from;
+        while (i < to) {
+            final int length = sequenceLength(buffer.get(i));
+            if (length == 0) {
+                return false;
+            }
+            for (int k = 1; k < length && i + k < to; k++) {
+                if ((buffer.get(i + k) & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += length;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the length of the UTF-8 sequence by its first byte
+     *
+     * @param lead the first byte of the sequence
+     * @return the number of bytes or 0 if the byte cannot start a sequence
+     */
+    private static int sequenceLength(final byte lead) {
+        final int value = lead & 0xFF;
+        if (value < 0x80) {
+            return 1;
+        }
+        if (value < 0xC2) {
+            return 0;
+        }
+        if (value < 0xE0) {
+            return 2;
+        }
+        if (value < 0xF0) {
+            return 3;
+        }
+        return value < 0xF5 ? 4 : 0;
+    }
+
+    /**
+     * Tells whether the text can be encoded without replacing any characters
+     *
+     * @param text the text to check
+     * @return true if every character is representable
+     */
+    boolean canEncode(final String text) {
+        return charset.newEncoder().canEncode(text);
+    }
+
+    /**
+     * Gets the number of bytes of a line feed, which is the code unit size as well
+     *
+     * @return 1 or 2
+     */
+    int unitSize() {
+        return lineFeedHead + lineFeedTail;
+    }
+
+    /**
+     * Tells whether the byte is the 0x0A byte of a line feed.
+     * Its UTF-16 pair is only checked if it is inside the buffer.
+     *
+     * @param buffer the buffer to check, its position is ignored
+     * @param index  the index of the byte
+     * @return true if the byte ends a line
+     */
+    boolean isLineFeed(final ByteBuffer buffer, final int index) {
+        if (buffer.get(index) != '\n') {
+            return false;
+        }
+        for (int i = Math.max(index - lineFeedHead, 0); i < index; i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        for (int i = index + 1; i < index + lineFeedTail && i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the byte of the file is the 0x0A byte of a line feed
+     *
+     * @param file   the file to check
+     * @param offset the offset of the byte
+     * @return true if the byte ends a line
+     */
+    boolean isLineFeed(final MappedFile file, final long offset) {
+        if (file.get(offset) != '\n') {
+            return false;
+        }
+        for (long i = Math.max(offset - lineFeedHead, 0); i < offset; i++) {
+            if (file.get(i) != 0) {
+                return false;
+            }
+        }
+        for (long i = offset + 1; i < offset + lineFeedTail && i < file.getSize(); i++) {
+            if (file.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether a line starts at the index
+     *
+     * @param buffer the buffer to check
+     * @param index  the index of the supposed first byte of the line
+     * @return true if the index is 0 or follows a line feed
+     */
+    boolean isLineStart(final ByteBuffer buffer, final int index) {
+        return index == 0 || index >= lineFeedTail && isLineFeed(buffer, index - lineFeedTail);
+    }
+
+    /**
+     * Tells whether a line of the file starts at the offset
+     *
+     * @param file   the file to check
+     * @param offset the offset of the supposed first byte of the line
+     * @return true if the offset is 0 or follows a line feed
+     */
+    boolean isLineStart(final MappedFile file, final long offset) {
+        return offset == 0 || offset >= lineFeedTail && isLineFeed(file, offset - lineFeedTail);
+    }
+
+    /**
+     * Decodes the character ending right before the index
+     *
+     * @param buffer the buffer containing the text
+     * @param index  the index after the character
+     * @return the code point, -1 at the start of the buffer or U+FFFD if the bytes are malformed
+     */
+    int codePointBefore(final ByteBuffer buffer, final int index) {
+        switch (this) {
+            case UTF_8:
+                int start = index - 1;
+                while (start > 0 && index - start < 4 && (buffer.get(start) & 0xC0) == 0x80) {
+                    start--;
+                }
+                return start < 0 ? -1 : decodeUtf8(buffer, start, index);
+            case LATIN_1:
+                return index < 1 ? -1 : buffer.get(index - 1) & 0xFF;
+            default:
+                if (index < 2) {
+                    return -1;
+                }
+                final char low = unit(buffer, index - 2);
+                if (Character.isLowSurrogate(low) && index >= 4 && Character.isHighSurrogate(unit(buffer, index - 4))) {
+                    return Character.toCodePoint(unit(buffer, index - 4), low);
+                }
+                return low;
+        }
+    }
+
+    /**
+     * Decodes the character starting at the index
+     *
+     * @param buffer the buffer containing the text
+     * @param index  the index of the first byte of the character
+     * @param to     the index after the end of the text
+     * @return the code point, -1 at the end of the text or U+FFFD if the bytes are malformed
+     */
+    int codePointAt(final ByteBuffer buffer, final int index, final int to) {
+        if (index >= to) {
+            return -1;
+        }
+        switch (this) {
+            case UTF_8:
+                return decodeUtf8(buffer, index, Math.min(index + Math.max(sequenceLength(buffer.get(index)), 1), to));
+            case LATIN_1:
+                return buffer.get(index) & 0xFF;
+            default:
+                if (index + 2 > to) {
+                    return -1;
+                }
+                final char high = unit(buffer, index);
+                if (Character.isHighSurrogate(high) && index + 4 <= to
+                        && Character.isLowSurrogate(unit(buffer, index + 2))) {
+                    return Character.toCodePoint(high, unit(buffer, index + 2));
+                }
+                return high;
+        }
+    }
+
+    /**
+     * Reads a UTF-16 code unit in the byte order of the encoding
+     *
+     * @param buffer the buffer containing the text
+     * @param index  the index of the first byte of the unit
+     * @return the code unit
+     */
+    private char unit(final ByteBuffer buffer, final int index) {
+        final int first = buffer.get(index) & 0xFF;
+        final int second = buffer.get(index + 1) & 0xFF;
+        return (char) (this == UTF_16LE ? second << 8 | first : first << 8 | second);
+    }
+
+    /**
+     * Decodes a single UTF-8 sequence
+     *
+     * @param buffer the buffer containing the sequence
+     * @param from   the index of the first byte
+     * @param to     the index after the last byte
+     * @return the code point or U+FFFD if the bytes are not a single complete sequence
+     */
+    private static int decodeUtf8(final ByteBuffer buffer, final int from, final int to) {
+        final int length = sequenceLength(buffer.get(from));
+        if (length != to - from) {
+            return REPLACEMENT;
+        }
+        if (length == 1) {
+            return buffer.get(from);
+        }
+        int codePoint = buffer.get(from) & (0x7F >> length);
+        for (int i = from + 1; i < to; i++) {
+            if ((buffer.get(i) & 0xC0) != 0x80) {
+                return REPLACEMENT;
+            }
+            codePoint = codePoint << 6 | buffer.get(i) & 0x3F;
+        }
+        return codePoint;
+    }
+}
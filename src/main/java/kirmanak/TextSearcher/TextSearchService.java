@@ -8,114 +8,66 @@ import lombok.extern.log4j.Log4j2;
 import org.apache.logging.log4j.message.EntryMessage;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.*;
-import java.util.function.Consumer;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Runs the {@link SearchEngine} in the background and passes every found file to the listener
+ * as soon as it is found. The listener is called from the pool threads, the service value is
+ * the number of found files. Cancelling the service cancels the search.
+ * If the {@link SearchServer} is running, the search runs there and the listener is called from the task thread.
+ */
 @Getter
 @Log4j2
 @RequiredArgsConstructor
-class TextSearchService extends Service<List<Path>> {
-    private final Path rootFolder;
-    private final String extension;
-    private final String text;
+class TextSearchService extends Service<Integer> {
+    private final SearchRequest request;
+    private final SearchListener listener;
 
     @Override
-    protected Task<List<Path>> createTask() {
+    protected Task<Integer> createTask() {
         return new TextSearchTask();
     }
 
-    private class TextSearchTask extends Task<List<Path>> {
+    private class TextSearchTask extends Task<Integer> {
+
         @Override
-        protected List<Path> call() throws IOException {
+        protected Integer call() throws IOException, InterruptedException, ExecutionException {
             final EntryMessage m = log.traceEntry("call()");
-            updateMessage("Looking for files...");
-            final List<Future<Optional<Path>>> futures = walk();
-            updateMessage("Reading files...");
-            final List<Path> result = getResult(futures);
-            updateMessage("Done");
-            return log.traceExit(m, result);
-        }
-
-        /**
-         * Calls future.get() and handles the result
-         *
-         * @param futures the futures to be unwrapped
-         * @return the unwrapping results
-         */
-        private List<Path> getResult(final List<Future<Optional<Path>>> futures) {
-            final EntryMessage m = log.traceEntry("getResult(futures = {})", futures);
-            final int FILE_COUNT = futures.size();
-            final ArrayList<Path> result = new ArrayList<>(FILE_COUNT);
-            int counter = 0;
-            for (final Future<Optional<Path>> future : futures) {
-                getFuture(future, result::add);
-                counter++;
-                updateProgress(counter, FILE_COUNT);
+            updateMessage(getRequest().isUseIndex() ? "Updating index..." : "Looking for files...");
+            final Optional<SearchClient> client = SearchClient.connect();
+            if (client.isPresent()) {
+                final SearchClient remote = client.get();
+                final int result = remote.run(getRequest(), getListener(), () -> reportProgress(
+                        remote.getCompleted(), remote.getTotal(), remote.getSubmitted()
+                ), this::isCancelled);
+                updateMessage(remote.getSummary());
+                return log.traceExit(m, result);
             }
-            result.trimToSize();
+            final SearchEngine engine = new SearchEngine(getRequest(), getListener(), this::isCancelled);
+            final int result = engine.run(() -> reportProgress(
+                    engine.getCompleted().get(), engine.isTotalKnown() ? engine.getTotal() : -1,
+                    engine.getSubmitted().get()
+            ));
+            updateMessage(engine.getMetrics().summary());
             return log.traceExit(m, result);
         }
 
         /**
-         * Gets the future result catching the exceptions
+         * Shows how many files have been scanned. The progress is indeterminate until the walk is over.
          *
-         * @param future   the future to be unwrapped
-         * @param consumer the consumer of the result
+         * @param scanned   the number of scanned files
+         * @param total     the number of files to scan or -1 if the walk is still running
+         * @param submitted the number of files found by the walk so far
          */
-        private void getFuture(final Future<Optional<Path>> future, final Consumer<Path> consumer) {
-            final EntryMessage m = log.traceEntry(
-                    "getFuture(future = {}, consumer = {})", future, consumer
-            );
-            try {
-                future.get().ifPresent(consumer);
-            } catch (final InterruptedException err) {
-                log.error(m, err);
-                Thread.currentThread().interrupt();
-            } catch (final ExecutionException err) {
-                log.error(m, err);
+        private void reportProgress(final long scanned, final long total, final long submitted) {
+            if (total >= 0) {
+                updateProgress(scanned, total);
+                updateMessage(String.format("Reading files... %d of %d", scanned, total));
+            } else {
+                updateProgress(-1, 1);
+                updateMessage(String.format("Reading files... %d of %d found so far", scanned, submitted));
             }
-            log.traceExit(m);
-        }
-
-        /**
-         * Creates a callable which tests whether the provided file has the required text
-         *
-         * @param path the path to be checked
-         * @return the callable to be executed
-         */
-        private Callable<Optional<Path>> pathToCallable(final Path path) {
-            final EntryMessage m = log.traceEntry("pathToCallable(path = {})", path);
-            return log.traceExit(m, () -> {
-                final EntryMessage callableEntryMessage = log.traceEntry(
-                        "anonymous(path = {})", path
-                );
-                final boolean contains = Files.lines(path).anyMatch(line -> line.contains(getText()));
-                return log.traceExit(callableEntryMessage, contains ? Optional.of(path) : Optional.empty());
-            });
-        }
-
-        /**
-         * Walks through the file system starting from the root path
-         *
-         * @return list of futures with results of the file reading
-         */
-        private List<Future<Optional<Path>>> walk() throws IOException {
-            final EntryMessage m = log.traceEntry("walk()");
-            final ExecutorService executorService = Executors.newWorkStealingPool();
-            final FileFinder fileFinder = new FileFinder(getExtension());
-            Files.walkFileTree(getRootFolder(), fileFinder);
-            final List<Future<Optional<Path>>> result = fileFinder.getPaths().stream()
-                    .filter(Files::isReadable)
-                    .map(this::pathToCallable)
-                    .map(executorService::submit)
-                    .collect(Collectors.toList());
-            return log.traceExit(m, result);
         }
     }
 }
@@ -0,0 +1,42 @@
+package kirmanak.TextSearcher;
+
+import javafx.application.Application;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.IOException;
+
+@Log4j2
+public class TextSearcherApplication extends Application {
+    /**
+     * Starts the GUI
+     *
+     * @param primaryStage the main window
+     */
+    public void start(final Stage primaryStage) throws IOException {
+        final EntryMessage entryMessage = log.traceEntry("start(primaryStage = {})", primaryStage);
+        final FXMLLoader loader = new FXMLLoader(getClass().getResource("/main.fxml"));
+        final Parent parent = loader.load();
+        final WindowController controller = loader.getController();
+        controller.setPrimaryStage(primaryStage);
+        primaryStage.setTitle("TextSearcher");
+        primaryStage.setScene(new Scene(parent));
+        primaryStage.show();
+        log.traceExit(entryMessage);
+    }
+
+    /**
+     * Stops the background threads when the window is closed
+     */
+    @Override
+    public void stop() {
+        final EntryMessage entryMessage = log.traceEntry("stop()");
+        IndexManager.closeAll();
+        ScanScheduler.get().shutdown();
+        log.traceExit(entryMessage);
+    }
+}
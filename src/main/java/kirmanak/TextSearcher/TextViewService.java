@@ -2,62 +2,42 @@ package kirmanak.TextSearcher;
 
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
-import javafx.scene.control.TextArea;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.log4j.Log4j2;
 import org.apache.logging.log4j.message.EntryMessage;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 
+/**
+ * Maps the file for the {@link FileViewer}, the lines are indexed by the viewer later.
+ * Archive entries are decompressed into a temporary file and mapped.
+ * The time it takes is recorded in the view latency of the {@link SearchMetrics}.
+ */
 @Log4j2
 @Getter
 @RequiredArgsConstructor
-// TODO: use something faster
-class TextViewService extends Service<TextArea> {
+class TextViewService extends Service<LineIndex> {
     private final Path path;
-    private final String text;
+    private final QueryMatcher matcher;
+    private final FileMatches matches;
 
     @Override
-    protected Task<TextArea> createTask() {
+    protected Task<LineIndex> createTask() {
         return new TextViewTask();
     }
 
-    private class TextViewTask extends Task<TextArea> {
+    private class TextViewTask extends Task<LineIndex> {
         @Override
-        protected TextArea call() throws IOException {
+        protected LineIndex call() throws IOException {
             final EntryMessage m = log.traceEntry("call()");
-            return log.traceExit(m, readText(initializeTextArea()));
-        }
-
-        /**
-         * Creates and configures a TextArea instance
-         *
-         * @return an configured TextArea instance
-         */
-        private TextArea initializeTextArea() {
-            final EntryMessage m = log.traceEntry("initializeTextArea()");
-            final TextArea textArea = new TextArea();
-            textArea.setEditable(false);
-            return log.traceExit(m, textArea);
-        }
-
-        /**
-         * Reads text to the provided TextArea from the file
-         *
-         * @param textArea the initialized TextArea instance
-         * @return the provided text area containing the file content
-         * @throws IOException if any I/O error has happened
-         */
-        private TextArea readText(final TextArea textArea) throws IOException {
-            // TODO: highlight the found text
-            final EntryMessage m = log.traceEntry("readText(textArea = {})", textArea);
-            final StringBuilder stringBuilder = new StringBuilder();
-            Files.lines(getPath()).forEach(line -> stringBuilder.append(line).append("\n"));
-            textArea.setText(stringBuilder.toString());
-            return log.traceExit(m, textArea);
+            final long started = System.nanoTime();
+            final MappedFile file = ArchiveScanner.archiveOf(getPath()).isPresent()
+                    ? ArchiveScanner.load(getPath(), Long.MAX_VALUE) : new MappedFile(getPath());
+            final LineIndex index = new LineIndex(file, getMatches().getEncoding());
+            SearchMetrics.total().getView().record(System.nanoTime() - started);
+            return log.traceExit(m, index);
         }
     }
 }
@@ -0,0 +1,149 @@
+package kirmanak.TextSearcher;
+
+import javafx.collections.ObservableList;
+import javafx.scene.control.TreeItem;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Builds a TreeItem hierarchy of found files relative to the search root.
+ * The files are kept in a trie with hashed children, the TreeItems of a directory are created
+ * only when the directory is expanded, so adding a file costs a single lookup of its parent directory.
+ */
+@Log4j2
+@Getter
+class TreeBuilder {
+    private final Path root;
+    private final SearchRequest request;
+    private final TreeItem<Path> treeRoot;
+    private final Node rootNode;
+    private final Map<Path, Node> directories = new HashMap<>();
+
+    TreeBuilder(final Path root, final SearchRequest request) {
+        final EntryMessage m = log.traceEntry("TreeBuilder(root = {}, request = {})", root, request);
+        this.root = root;
+        this.request = request;
+        this.rootNode = new Node(root, null);
+        this.treeRoot = rootNode.item();
+        treeRoot.setExpanded(true);
+        log.traceExit(m);
+    }
+
+    /**
+     * Adds the found file and all its parent directories to the tree
+     *
+     * @param matches the found file
+     */
+    void add(final FileMatches matches) {
+        final EntryMessage m = log.isTraceEnabled() ? log.traceEntry("add(matches = {})", matches) : null;
+        final Path path = matches.getPath();
+        final Node parent = directory(path.getParent());
+        if (!parent.children.containsKey(path.getFileName())) {
+            parent.add(new Node(path.getFileName(), matches));
+        }
+        log.traceExit(m);
+    }
+
+    /**
+     * Finds the node of the directory creating it and its missing parents
+     *
+     * @param directory the absolute path of the directory
+     * @return the node of the directory
+     */
+    private Node directory(final Path directory) {
+        if (Objects.isNull(directory) || directory.equals(getRoot())) {
+            return getRootNode();
+        }
+        Node node = directories.get(directory);
+        if (Objects.isNull(node)) {
+            final Node parent = directory(directory.getParent());
+            node = parent.children.get(directory.getFileName());
+            if (Objects.isNull(node)) {
+                node = new Node(directory.getFileName(), null);
+                parent.add(node);
+            }
+            directories.put(directory, node);
+        }
+        return node;
+    }
+
+    /**
+     * A directory or a found file in the trie
+     */
+    private class Node {
+        private final Path name;
+        private final FileMatches matches;
+        private final Map<Path, Node> children;
+        private TreeItem<Path> item = null;
+        private boolean expanded = false;
+
+        Node(final Path name, final FileMatches matches) {
+            this.name = name;
+            this.matches = matches;
+            this.children = Objects.isNull(matches) ? new LinkedHashMap<>() : null;
+        }
+
+        /**
+         * Adds the child, its TreeItem is created right away if the TreeItems of the children already exist
+         *
+         * @param child the new child
+         */
+        void add(final Node child) {
+            children.put(child.name, child);
+            if (expanded) {
+                item.getChildren().add(child.item());
+            }
+        }
+
+        /**
+         * Gets the TreeItem of the node creating it on the first call
+         *
+         * @return the TreeItem representing the node
+         */
+        TreeItem<Path> item() {
+            if (Objects.isNull(item)) {
+                item = Objects.isNull(matches)
+                        ? new DirectoryTreeItem(this)
+                        : new MatchTreeItem(name, matches, getRequest());
+            }
+            return item;
+        }
+    }
+
+    /**
+     * A directory TreeItem which creates the TreeItems of its children on the first access
+     */
+    private static class DirectoryTreeItem extends TreeItem<Path> {
+        private final Node node;
+
+        DirectoryTreeItem(final Node node) {
+            super(node.name);
+            this.node = node;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return false;
+        }
+
+        @Override
+        public ObservableList<TreeItem<Path>> getChildren() {
+            if (!node.expanded) {
+                node.expanded = true;
+                final List<TreeItem<Path>> items = new ArrayList<>(node.children.size());
+                node.children.values().forEach(child -> items.add(child.item()));
+                super.getChildren().setAll(items);
+            }
+            return super.getChildren();
+        }
+    }
+}
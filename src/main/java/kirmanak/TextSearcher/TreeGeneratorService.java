@@ -9,16 +9,16 @@ import lombok.extern.log4j.Log4j2;
 import org.apache.logging.log4j.message.EntryMessage;
 
 import java.nio.file.Path;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Objects;
 
 @Getter
 @RequiredArgsConstructor
 @Log4j2
 class TreeGeneratorService extends Service<TreeItem<Path>> {
-    private final List<Path> paths;
+    private static final int PROGRESS_INTERVAL = 1024;
+    private final List<FileMatches> files;
     private final Path root;
+    private final SearchRequest request;
 
     @Override
     protected Task<TreeItem<Path>> createTask() {
@@ -39,56 +39,20 @@ class TreeGeneratorService extends Service<TreeItem<Path>> {
          */
         private TreeItem<Path> generateTree() {
             final EntryMessage m = log.traceEntry("generateTree()");
-            final TreeItem<Path> treeRoot = new TreeItem<>(getRoot());
-            treeRoot.setExpanded(true);
-            getPaths().stream().map(this::listOfPaths).forEach(list -> addPaths(treeRoot, list));
-            return log.traceExit(m, treeRoot);
-        }
-
-        /**
-         * Generates a list of directories to find this path from the current root.
-         * "/home/user/folder/file.log" becomes "[user, folder, file.log]" if the root is "/home"
-         *
-         * @param path the path to the file
-         * @return the list of paths
-         */
-        private List<Path> listOfPaths(final Path path) {
-            final EntryMessage m = log.traceEntry("listOfPaths(path = {})", path);
-            final LinkedList<Path> pathsList = new LinkedList<>();
-            pathsList.addFirst(path.getFileName());
-            Path parent = path.getParent();
-            while (Objects.nonNull(parent) && !parent.equals(getRoot())) {
-                pathsList.addFirst(parent.getFileName());
-                parent = parent.getParent();
-            }
-            return log.traceExit(m, pathsList);
-        }
-
-        /**
-         * Adds paths from the list to the provided treeRoot if they are not present
-         *
-         * @param treeRoot the treeRoot which should contain all paths from the list
-         * @param list     paths to add to the treeRoot
-         */
-        private void addPaths(final TreeItem<Path> treeRoot, final List<Path> list) {
-            final EntryMessage m = log.traceEntry("addPaths(treeRoot = {}, list = {})", treeRoot, list);
-            TreeItem<Path> currentRoot = treeRoot;
-            final int max = list.size();
+            final long started = System.nanoTime();
+            final TreeBuilder builder = new TreeBuilder(getRoot(), getRequest());
+            final int max = getFiles().size();
             int counter = 0;
-            main:
-            for (final Path path : list) {
-                for (final TreeItem<Path> child : currentRoot.getChildren()) {
-                    if (child.getValue().equals(path)) {
-                        currentRoot = child;
-                        continue main;
-                    }
+            for (final FileMatches matches : getFiles()) {
+                builder.add(matches);
+                counter++;
+                if (counter % PROGRESS_INTERVAL == 0) {
+                    updateProgress(counter, max);
                 }
-                final TreeItem<Path> newRoot = new TreeItem<>(path);
-                currentRoot.getChildren().add(newRoot);
-                currentRoot = newRoot;
-                updateProgress(counter, max);
             }
-            log.traceExit(m);
+            updateProgress(max, max);
+            SearchMetrics.total().getTree().record(System.nanoTime() - started);
+            return log.traceExit(m, builder.getTreeRoot());
         }
     }
 }
@@ -0,0 +1,102 @@
+package kirmanak.TextSearcher;
+
+import javafx.animation.AnimationTimer;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves found files from the search threads to the tree once per pulse.
+ * The queue is bounded, so the search waits for the UI instead of piling up results.
+ * The time every batch takes is recorded in the tree latency of the {@link SearchMetrics}.
+ */
+@Log4j2
+@Getter
+class TreeStreamer extends AnimationTimer implements SearchListener {
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int BATCH_SIZE = 512;
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final BlockingQueue<FileMatches> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final List<FileMatches> batch = new ArrayList<>(BATCH_SIZE);
+    private final TreeBuilder builder;
+    private volatile boolean cancelled = false;
+
+    TreeStreamer(final Path root, final SearchRequest request) {
+        final EntryMessage m = log.traceEntry("TreeStreamer(root = {}, request = {})", root, request);
+        builder = new TreeBuilder(root, request);
+        log.traceExit(m);
+    }
+
+    /**
+     * Publishes a found file waiting for free space in the queue.
+     * The file is dropped if the streamer has been cancelled.
+     *
+     * @param matches the found file
+     */
+    @Override
+    public void onMatch(final FileMatches matches) {
+        try {
+            while (!cancelled && !queue.offer(matches, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                log.trace("onMatch(matches = {}): the queue is full", matches.getPath());
+            }
+        } catch (final InterruptedException err) {
+            log.error(err);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Inserts the next batch of found files into the tree
+     *
+     * @param now the timestamp of the current frame
+     */
+    @Override
+    public void handle(final long now) {
+        drain(BATCH_SIZE);
+    }
+
+    /**
+     * Stops the pulses and inserts everything left in the queue
+     */
+    void finish() {
+        final EntryMessage m = log.traceEntry("finish()");
+        stop();
+        drain(Integer.MAX_VALUE);
+        log.traceExit(m);
+    }
+
+    /**
+     * Stops the pulses and drops everything published after that
+     */
+    void cancel() {
+        final EntryMessage m = log.traceEntry("cancel()");
+        cancelled = true;
+        stop();
+        queue.clear();
+        log.traceExit(m);
+    }
+
+    /**
+     * Moves up to max files from the queue to the tree
+     *
+     * @param max the maximum number of files to move
+     */
+    private void drain(final int max) {
+        int left = max;
+        while (left > 0 && queue.drainTo(batch, Math.min(left, BATCH_SIZE)) > 0) {
+            final long started = System.nanoTime();
+            left -= batch.size();
+            batch.forEach(getBuilder()::add);
+            batch.clear();
+            SearchMetrics.total().getTree().record(System.nanoTime() - started);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package kirmanak.TextSearcher;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Memory-mapped trigram index of the files with the extension under the root folder.
+ * Rotated and compressed files are indexed by their decompressed content, a zip file by the content of its entries.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * int magic, int version, string root, string extension
+ * int fileCount, fileCount * (string relativePath, long size, long modifiedMillis, long headHash)
+ * int trigramCount, trigramCount * (int trigram, int postingsOffset, int fileCount)
+ * postings: varint-encoded deltas of sorted file ids
+ * </pre>
+ * Strings are stored as int length followed by UTF-8 bytes.
+ * The file table doubles as the manifest used by {@link TrigramIndexBuilder#update} to find changed files.
+ */
+@Log4j2
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+class TrigramIndex {
+    static final int MAGIC = 0x54534958;
+    static final int VERSION = 3;
+    static final int TABLE_ENTRY_SIZE = 12;
+    private static final Path INDEX_FOLDER = Paths.get(System.getProperty("user.home"), ".TextSearcher", "index");
+
+    private final Path root;
+    private final String extension;
+    private final Map<Path, Integer> ids;
+    private final Path[] paths;
+    private final long[] sizes;
+    private final long[] modifiedTimes;
+    private final long[] headHashes;
+    private final ByteBuffer table;
+    private final ByteBuffer postings;
+
+    /**
+     * Resolves the location of the index for the root folder and the extension
+     *
+     * @param root      the search root folder
+     * @param extension the extension of the indexed files
+     * @return the path of the index file
+     */
+    static Path indexFile(final Path root, final String extension) {
+        final EntryMessage m = log.traceEntry("indexFile(root = {}, extension = {})", root, extension);
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final byte[] hash = digest.digest(
+                    (root.toAbsolutePath().normalize() + "\n" + extension).getBytes(StandardCharsets.UTF_8)
+            );
+            final StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", hash[i]));
+            }
+            return log.traceExit(m, INDEX_FOLDER.resolve(name.append(".idx").toString()));
+        } catch (final NoSuchAlgorithmException err) {
+            throw new IllegalStateException(err);
+        }
+    }
+
+    /**
+     * Maps the previously built index
+     *
+     * @param root      the search root folder
+     * @param extension the extension of the indexed files
+     * @return the index or nothing if it has not been built yet or is not readable
+     * @throws IOException if the index file could not be read
+     */
+    static Optional<TrigramIndex> open(final Path root, final String extension) throws IOException {
+        final EntryMessage m = log.traceEntry("open(root = {}, extension = {})", root, extension);
+        final Path file = indexFile(root, extension);
+        if (!Files.isRegularFile(file)) {
+            return log.traceExit(m, Optional.empty());
+        }
+        final ByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                || !readString(buffer).equals(root.toAbsolutePath().normalize().toString())
+                || !readString(buffer).equals(extension)) {
+            log.warn("open(root = {}, extension = {}): ignoring incompatible index {}", root, extension, file);
+            return log.traceExit(m, Optional.empty());
+        }
+        final int fileCount = buffer.getInt();
+        final Map<Path, Integer> ids = new HashMap<>(fileCount * 2);
+        final Path[] paths = new Path[fileCount];
+        final long[] sizes = new long[fileCount];
+        final long[] modifiedTimes = new long[fileCount];
+        final long[] headHashes = new long[fileCount];
+        for (int id = 0; id < fileCount; id++) {
+            paths[id] = root.resolve(readString(buffer));
+            ids.put(paths[id], id);
+            sizes[id] = buffer.getLong();
+            modifiedTimes[id] = buffer.getLong();
+            headHashes[id] = buffer.getLong();
+        }
+        final int trigramCount = buffer.getInt();
+        final ByteBuffer table = buffer.slice();
+        table.limit(trigramCount * TABLE_ENTRY_SIZE);
+        buffer.position(buffer.position() + trigramCount * TABLE_ENTRY_SIZE);
+        final ByteBuffer postings = buffer.slice();
+        return log.traceExit(m, Optional.of(
+                new TrigramIndex(root, extension, ids, paths, sizes, modifiedTimes, headHashes, table, postings)
+        ));
+    }
+
+    /**
+     * Reads a string written as int length followed by UTF-8 bytes
+     *
+     * @param buffer the buffer to read from
+     * @return the read string
+     */
+    private static String readString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the indexed files which contain every trigram of the pattern
+     *
+     * @param pattern the encoded query
+     * @return ids of the candidate files or nothing if the pattern is too short to narrow the search
+     */
+    Optional<BitSet> candidates(final byte[] pattern) {
+        final EntryMessage m = log.traceEntry("candidates(pattern = {})", pattern);
+        final int[] trigrams = Trigrams.get().of(pattern);
+        if (trigrams.length == 0) {
+            return log.traceExit(m, Optional.empty());
+        }
+        BitSet result = null;
+        for (final int trigram : trigrams) {
+            final BitSet files = postings(trigram);
+            if (Objects.isNull(result)) {
+                result = files;
+            } else {
+                result.and(files);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return log.traceExit(m, Optional.of(result));
+    }
+
+    /**
+     * Lists the indexed files which may contain any of the patterns
+     *
+     * @param patterns the encoded literals one of which every match contains
+     * @return the candidate files, all indexed files if some pattern is too short to narrow the search
+     */
+    List<Path> candidatePaths(final List<byte[]> patterns) {
+        final EntryMessage m = log.traceEntry("candidatePaths(patterns = {})", patterns.size());
+        final BitSet files = new BitSet(getPaths().length);
+        for (final byte[] pattern : patterns) {
+            final Optional<BitSet> candidates = candidates(pattern);
+            if (!candidates.isPresent()) {
+                return log.traceExit(m, Arrays.asList(getPaths()));
+            }
+            files.or(candidates.get());
+        }
+        if (patterns.isEmpty()) {
+            return log.traceExit(m, Arrays.asList(getPaths()));
+        }
+        final List<Path> result = new ArrayList<>(files.cardinality());
+        for (int id = files.nextSetBit(0); id >= 0; id = files.nextSetBit(id + 1)) {
+            result.add(getPaths()[id]);
+        }
+        return log.traceExit(m, result);
+    }
+
+    /**
+     * Inverts the postings into the trigrams of the files
+     *
+     * @param ids the ids of the files whose trigrams are needed
+     * @return the sorted trigrams by the file id, null for the files which have not been asked for
+     */
+    int[][] fileTrigrams(final BitSet ids) {
+        final EntryMessage m = log.traceEntry("fileTrigrams(ids = {})", ids.cardinality());
+        final int[] counts = new int[getPaths().length];
+        final int trigramCount = getTable().limit() / TABLE_ENTRY_SIZE;
+        for (int i = 0; i < trigramCount; i++) {
+            forEachPosting(i * TABLE_ENTRY_SIZE, id -> counts[id]++);
+        }
+        final int[][] result = new int[counts.length][];
+        for (int id = ids.nextSetBit(0); id >= 0 && id < counts.length; id = ids.nextSetBit(id + 1)) {
+            result[id] = new int[counts[id]];
+        }
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < trigramCount; i++) {
+            final int trigram = getTable().getInt(i * TABLE_ENTRY_SIZE);
+            forEachPosting(i * TABLE_ENTRY_SIZE, id -> {
+                if (Objects.nonNull(result[id])) {
+                    result[id][counts[id]++] = trigram;
+                }
+            });
+        }
+        return log.traceExit(m, result);
+    }
+
+    /**
+     * Decodes the posting list of the trigram
+     *
+     * @param trigram the trigram to look for
+     * @return ids of the files containing the trigram
+     */
+    private BitSet postings(final int trigram) {
+        final BitSet result = new BitSet(getPaths().length);
+        int low = 0;
+        int high = getTable().limit() / TABLE_ENTRY_SIZE - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int entry = middle * TABLE_ENTRY_SIZE;
+            final int current = getTable().getInt(entry);
+            if (current < trigram) {
+                low = middle + 1;
+            } else if (current > trigram) {
+                high = middle - 1;
+            } else {
+                forEachPosting(entry, result::set);
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the posting list of the trigram table entry
+     *
+     * @param entry    the offset of the entry in the trigram table
+     * @param consumer the consumer of the file ids in ascending order
+     */
+    private void forEachPosting(final int entry, final IntConsumer consumer) {
+        int position = getTable().getInt(entry + 4);
+        final int count = getTable().getInt(entry + 8);
+        int id = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = getPostings().get(position++);
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            id += delta;
+            consumer.accept(id);
+        }
+    }
+}
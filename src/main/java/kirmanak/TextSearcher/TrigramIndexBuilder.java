@@ -0,0 +1,324 @@
+package kirmanak.TextSearcher;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Builds the {@link TrigramIndex} of the files with the extension or matching the include globs under the root folder
+ * and stores it on disk.
+ * An existing index can be updated re-reading only new and changed files. Files which only grew since
+ * the previous build keep their old trigrams and only the appended tail is read.
+ * Rotated and compressed files are indexed too, the trigrams of an archive are taken from its decompressed content.
+ */
+@Log4j2
+@Getter
+@RequiredArgsConstructor
+class TrigramIndexBuilder {
+    private static final int HEAD_HASH_SIZE = 4096;
+
+    private final Path root;
+    private final String extension;
+
+    /**
+     * Walks the root folder, indexes every found file and writes the index
+     *
+     * @return the written index
+     * @throws IOException if the walk failed or the index could not be written
+     */
+    TrigramIndex build() throws IOException {
+        final EntryMessage m = log.traceEntry("build()");
+        return log.traceExit(m, index(walk(), Optional.empty(), path -> true));
+    }
+
+    /**
+     * Walks the root folder and re-reads the files which differ from the previous index manifest
+     *
+     * @param previous the index to update
+     * @return the updated index, the previous one if nothing has changed
+     * @throws IOException if the walk failed or the index could not be written
+     */
+    TrigramIndex update(final TrigramIndex previous) throws IOException {
+        final EntryMessage m = log.traceEntry("update(previous = {})", previous);
+        return log.traceExit(m, index(walk(), Optional.of(previous), path -> true));
+    }
+
+    /**
+     * Re-reads only the provided files without walking the root folder
+     *
+     * @param previous the index to update
+     * @param changed  the files which were created, modified or deleted since the previous index was built
+     * @return the updated index, the previous one if nothing has changed
+     * @throws IOException if the index could not be written
+     */
+    TrigramIndex update(final TrigramIndex previous, final Set<Path> changed) throws IOException {
+        final EntryMessage m = log.traceEntry("update(previous = {}, changed = {})", previous, changed);
+        final FileFinder fileFinder = new FileFinder(getExtension());
+        final Set<Path> files = new LinkedHashSet<>(Arrays.asList(previous.getPaths()));
+        for (final Path path : changed) {
+            if (fileFinder.getMatcher().matches(path.getFileName())) {
+                files.add(path);
+            }
+        }
+        return log.traceExit(m, index(new ArrayList<>(files), Optional.of(previous), changed::contains));
+    }
+
+    /**
+     * Lists the files to index
+     *
+     * @return the files with the extension, the rotated and the compressed ones under the root folder
+     * @throws IOException if the walk failed
+     */
+    private List<Path> walk() throws IOException {
+        final EntryMessage m = log.traceEntry("walk()");
+        final FileFinder fileFinder = new FileFinder(getExtension());
+        Files.walkFileTree(getRoot(), fileFinder);
+        return log.traceExit(m, new ArrayList<>(fileFinder.getPaths()));
+    }
+
+    /**
+     * Computes the trigrams of the files reusing the previous index where possible and writes the result.
+     * The trigrams of the reused files are taken from the previous postings only if the index has to be rewritten.
+     *
+     * @param files          the files to index
+     * @param optionalIndex  the previous index
+     * @param mayHaveChanged tells whether the file has to be compared with the manifest
+     * @return the written index
+     * @throws IOException if the index could not be written
+     */
+    private TrigramIndex index(final List<Path> files, final Optional<TrigramIndex> optionalIndex,
+                               final Predicate<Path> mayHaveChanged) throws IOException {
+        final EntryMessage m = log.traceEntry("index(files = {}, optionalIndex = {})", files.size(), optionalIndex);
+        final Entry[] entries = new Entry[files.size()];
+        IntStream.range(0, files.size()).parallel().forEach(i ->
+                entries[i] = entry(files.get(i), optionalIndex, mayHaveChanged)
+        );
+        final List<Entry> alive = new ArrayList<>(entries.length);
+        final BitSet kept = new BitSet();
+        boolean changed = !optionalIndex.isPresent() || optionalIndex.get().getPaths().length != entries.length;
+        for (final Entry entry : entries) {
+            if (Objects.nonNull(entry)) {
+                alive.add(entry);
+                changed |= !entry.reused;
+                if (entry.previousId >= 0) {
+                    kept.set(entry.previousId);
+                }
+            } else {
+                changed = true;
+            }
+        }
+        if (!changed) {
+            log.debug("index(): nothing has changed under {}", getRoot());
+            return log.traceExit(m, optionalIndex.get());
+        }
+        final int[][] previousTrigrams = kept.isEmpty() ? new int[0][] : optionalIndex.get().fileTrigrams(kept);
+        for (final Entry entry : alive) {
+            if (entry.previousId >= 0) {
+                entry.trigrams = Objects.isNull(entry.trigrams)
+                        ? previousTrigrams[entry.previousId]
+                        : Trigrams.union(previousTrigrams[entry.previousId], entry.trigrams);
+            }
+        }
+        write(alive);
+        final TrigramIndex index = TrigramIndex.open(getRoot(), getExtension())
+                .orElseThrow(() -> new IOException("The written index could not be opened"));
+        return log.traceExit(m, index);
+    }
+
+    /**
+     * Compares the file with the previous index manifest and reads as little of it as possible.
+     * The entries of unchanged and appended files refer to their previous trigrams by the previous file id.
+     *
+     * @param path           the file to index
+     * @param optionalIndex  the previous index
+     * @param mayHaveChanged tells whether the file has to be compared with the manifest
+     * @return the file entry or null if the file no longer exists or could not be read
+     */
+    private Entry entry(final Path path, final Optional<TrigramIndex> optionalIndex,
+                        final Predicate<Path> mayHaveChanged) {
+        final Optional<Integer> previousId = optionalIndex.map(index -> index.getIds().get(path));
+        if (previousId.isPresent() && !mayHaveChanged.test(path)) {
+            final TrigramIndex index = optionalIndex.get();
+            final int id = previousId.get();
+            return new Entry(path, index.getSizes()[id], index.getModifiedTimes()[id],
+                    index.getHeadHashes()[id], id, null, true);
+        }
+        try {
+            final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            final long size = attrs.size();
+            final long modified = attrs.lastModifiedTime().toMillis();
+            if (previousId.isPresent()) {
+                final TrigramIndex index = optionalIndex.get();
+                final int id = previousId.get();
+                final long previousSize = index.getSizes()[id];
+                if (previousSize == size && index.getModifiedTimes()[id] == modified) {
+                    return new Entry(path, size, modified, index.getHeadHashes()[id], id, null, true);
+                }
+                if (previousSize >= 0 && previousSize < size && !ArchiveScanner.isArchive(path)
+                        && headHash(path, previousSize) == index.getHeadHashes()[id]) {
+                    // appended since the previous build, the last two old bytes start the first new trigrams
+                    final int[] tail = Trigrams.get().of(path, Math.max(previousSize - 2, 0));
+                    return new Entry(path, size, modified, headHash(path, size), id, tail, false);
+                }
+            }
+            final int[] trigrams = ArchiveScanner.isArchive(path)
+                    ? ArchiveScanner.trigrams(path, PathFilter.selected(getExtension())) : Trigrams.get().of(path);
+            return new Entry(path, size, modified, headHash(path, size), -1, trigrams, false);
+        } catch (final NoSuchFileException err) {
+            log.debug("entry(path = {}): removed", path);
+        } catch (final IOException err) {
+            log.error(err);
+        }
+        return null;
+    }
+
+    /**
+     * Hashes the beginning of the file to tell appended files from rewritten or rotated ones
+     *
+     * @param path the file to hash
+     * @param size the file size to take into account
+     * @return CRC32 of the first bytes of the file
+     * @throws IOException if the file could not be read
+     */
+    private static long headHash(final Path path, final long size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, HEAD_HASH_SIZE));
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int read = 0;
+            while (read >= 0 && buffer.hasRemaining()) {
+                read = channel.read(buffer);
+            }
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        return crc.getValue();
+    }
+
+    /**
+     * Writes the index to a temporary file and moves it to the index location
+     *
+     * @param entries the indexed files, the position is the file id
+     * @throws IOException if the index could not be written
+     */
+    private void write(final List<Entry> entries) throws IOException {
+        final EntryMessage m = log.traceEntry("write(entries = {})", entries.size());
+        final Map<Integer, Postings> postings = new HashMap<>();
+        for (int id = 0; id < entries.size(); id++) {
+            for (final int trigram : entries.get(id).trigrams) {
+                postings.computeIfAbsent(trigram, key -> new Postings()).add(id);
+            }
+        }
+        final Path target = TrigramIndex.indexFile(getRoot(), getExtension());
+        Files.createDirectories(target.getParent());
+        final Path temporary = Files.createTempFile(target.getParent(), "index", ".tmp");
+        final int[] trigrams = postings.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(TrigramIndex.MAGIC);
+            out.writeInt(TrigramIndex.VERSION);
+            writeString(out, getRoot().toAbsolutePath().normalize().toString());
+            writeString(out, getExtension());
+            out.writeInt(entries.size());
+            for (final Entry entry : entries) {
+                writeString(out, getRoot().relativize(entry.path).toString());
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeLong(entry.headHash);
+            }
+            out.writeInt(trigrams.length);
+            for (final int trigram : trigrams) {
+                final Postings list = postings.get(trigram);
+                out.writeInt(trigram);
+                out.writeInt(encoded.size());
+                out.writeInt(list.size);
+                list.encode(encoded);
+            }
+            encoded.writeTo(out);
+        } catch (final IOException err) {
+            Files.deleteIfExists(temporary);
+            throw err;
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.traceExit(m);
+    }
+
+    /**
+     * Writes a string as int length followed by UTF-8 bytes
+     *
+     * @param out    the stream to write to
+     * @param string the string to write
+     * @throws IOException if the stream failed
+     */
+    private static void writeString(final DataOutput out, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Manifest record and trigrams of an indexed file.
+     * An entry with a previous id gets its old trigrams added once the index is known to be rewritten:
+     * all of them for an unchanged file, the ones before the appended tail for a grown file.
+     */
+    @AllArgsConstructor
+    private static class Entry {
+        private final Path path;
+        private final long size;
+        private final long modified;
+        private final long headHash;
+        private final int previousId;
+        private int[] trigrams;
+        private final boolean reused;
+    }
+
+    /**
+     * Growable list of file ids containing a trigram
+     */
+    private static class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        /**
+         * Appends the file id, ids must be added in ascending order
+         *
+         * @param id the file id
+         */
+        void add(final int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        /**
+         * Writes the ids as varint-encoded deltas
+         *
+         * @param out the stream to write to
+         */
+        void encode(final ByteArrayOutputStream out) {
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                int delta = ids[i] - previous;
+                previous = ids[i];
+                while ((delta & ~0x7F) != 0) {
+                    out.write((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                out.write(delta);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package kirmanak.TextSearcher;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.logging.log4j.message.EntryMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Extracts distinct byte trigrams. A trigram is three consecutive bytes packed into the lower 24 bits of an int.
+ */
+@Log4j2
+class Trigrams {
+    static final int TRIGRAM_COUNT = 1 << 24;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<Trigrams> INSTANCES = ThreadLocal.withInitial(Trigrams::new);
+
+    private final BitSet seen = new BitSet(TRIGRAM_COUNT);
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private int[] found = new int[1024];
+    private int foundCount = 0;
+
+    private Trigrams() {
+    }
+
+    /**
+     * Gets the extractor owned by the current thread
+     *
+     * @return the extractor which may be reused by the current thread only
+     */
+    static Trigrams get() {
+        return INSTANCES.get();
+    }
+
+    /**
+     * Lists the distinct trigrams of the bytes
+     *
+     * @param bytes the bytes to split
+     * @return the sorted distinct trigrams, empty if there are less than three bytes
+     */
+    int[] of(final byte[] bytes) {
+        final EntryMessage m = log.traceEntry("of(bytes = {})", bytes);
+        reset();
+        int trigram = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            trigram = ((trigram << 8) | (bytes[i] & 0xFF)) & (TRIGRAM_COUNT - 1);
+            if (i >= 2) {
+                add(trigram);
+            }
+        }
+        return log.traceExit(m, collect());
+    }
+
+    /**
+     * Lists the distinct trigrams of the file content
+     *
+     * @param path the file to read
+     * @return the sorted distinct trigrams
+     * @throws IOException if the file could not be read
+     */
+    int[] of(final Path path) throws IOException {
+        return of(path, 0);
+    }
+
+    /**
+     * Lists the distinct trigrams of the file content starting from the position
+     *
+     * @param path     the file to read
+     * @param position the offset of the first byte to read
+     * @return the sorted distinct trigrams
+     * @throws IOException if the file could not be read
+     */
+    int[] of(final Path path, final long position) throws IOException {
+        final EntryMessage m = log.traceEntry("of(path = {}, position = {})", path, position);
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(position);
+            return log.traceExit(m, of(channel));
+        }
+    }
+
+    /**
+     * Lists the distinct trigrams of the channel content, e.g. of a decompressed archive entry
+     *
+     * @param channel the channel to read until its end
+     * @return the sorted distinct trigrams
+     * @throws IOException if the channel could not be read
+     */
+    int[] of(final ReadableByteChannel channel) throws IOException {
+        reset();
+        int trigram = 0;
+        long total = 0;
+        buffer.clear();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                trigram = ((trigram << 8) | (buffer.get() & 0xFF)) & (TRIGRAM_COUNT - 1);
+                if (++total >= 3) {
+                    add(trigram);
+                }
+            }
+            buffer.clear();
+        }
+        return collect();
+    }
+
+    /**
+     * Merges two sorted arrays of distinct trigrams
+     *
+     * @param first  the first sorted array
+     * @param second the second sorted array
+     * @return the sorted union of the arrays
+     */
+    static int[] union(final int[] first, final int[] second) {
+        final int[] result = new int[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                result[size++] = first[i++];
+            } else if (first[i] > second[j]) {
+                result[size++] = second[j++];
+            } else {
+                result[size++] = first[i++];
+                j++;
+            }
+        }
+        while (i < first.length) {
+            result[size++] = first[i++];
+        }
+        while (j < second.length) {
+            result[size++] = second[j++];
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Forgets the trigrams found by the previous call clearing only the bits which were set
+     */
+    private void reset() {
+        for (int i = 0; i < foundCount; i++) {
+            seen.clear(found[i]);
+        }
+        foundCount = 0;
+    }
+
+    /**
+     * Remembers the trigram if it has not been seen yet
+     *
+     * @param trigram the trigram to remember
+     */
+    private void add(final int trigram) {
+        if (!seen.get(trigram)) {
+            seen.set(trigram);
+            if (foundCount == found.length) {
+                found = Arrays.copyOf(found, found.length * 2);
+            }
+            found[foundCount++] = trigram;
+        }
+    }
+
+    /**
+     * Copies the found trigrams
+     *
+     * @return the sorted found trigrams
+     */
+    private int[] collect() {
+        final int[] result = Arrays.copyOf(found, foundCount);
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+package kirmanak.TextSearcher;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Accepts only the matches of the wrapped literal matcher which are not a part of a longer word, like grep -w:
+ * the characters right before and after the match must not be letters, digits or underscores.
+ * Only these two characters are decoded. The borders of the text count as word borders.
+ * A match right before the end of a part of the text is left for the next part, which starts a few bytes earlier
+ * than the match, so both characters around it are seen there.
+ * Only single literals are wrapped: a rejected match of several literals may hide a longer one starting at the same
+ * byte, so those are matched by a {@link RegexMatcher} instead.
+ */
+@Getter
+@RequiredArgsConstructor
+class WholeWordMatcher implements QueryMatcher {
+    private static final String WORD_CHARACTER = "[\\p{L}\\p{Nd}_]";
+    private static final int MAX_CHARACTER_BYTES = 4;
+
+    private final QueryMatcher matcher;
+    private final TextEncoding encoding;
+
+    @Override
+    public long find(final ByteBuffer buffer, final int from, final int to) {
+        return find(buffer, from, to, true);
+    }
+
+    @Override
+    public long find(final ByteBuffer buffer, final int from, final int to, final boolean textEnds) {
+        int start = from;
+        while (start < to) {
+            final long match = matcher.find(buffer, start, to);
+            if (match < 0) {
+                return -1;
+            }
+            if (!textEnds && QueryMatcher.end(match) + MAX_CHARACTER_BYTES > to) {
+                // the character after the match may be cut off
+                return -1;
+            }
+            final int hit = QueryMatcher.start(match);
+            if (!isWordCharacter(encoding.codePointBefore(buffer, hit))
+                    && !isWordCharacter(encoding.codePointAt(buffer, QueryMatcher.end(match), to))) {
+                return match;
+            }
+            start = hit + 1;
+        }
+        return -1;
+    }
+
+    @Override
+    public int maxLength() {
+        // a deferred match is seen in the next part together with the characters before and after it
+        return matcher.maxLength() == 0 ? 0 : matcher.maxLength() + 2 * MAX_CHARACTER_BYTES;
+    }
+
+    @Override
+    public List<byte[]> requiredLiterals() {
+        return matcher.requiredLiterals();
+    }
+
+    @Override
+    public Pattern textPattern() {
+        final Pattern pattern = matcher.textPattern();
+        return Pattern.compile(wrap(pattern.pattern()), pattern.flags());
+    }
+
+    /**
+     * Restricts the regular expression to the matches not surrounded by word characters
+     *
+     * @param regex the regular expression
+     * @return the expression with the word border checks around it
+     */
+    static String wrap(final String regex) {
+        return String.format("(?<!%s)(?:%s)(?!%s)", WORD_CHARACTER, regex, WORD_CHARACTER);
+    }
+
+    /**
+     * Tells whether the character is a part of a word
+     *
+     * @param codePoint the character or -1 at the border of the text
+     * @return true for letters, digits and underscores
+     */
+    private static boolean isWordCharacter(final int codePoint) {
+        return codePoint >= 0 && (Character.isLetterOrDigit(codePoint) || codePoint == '_');
+    }
+}
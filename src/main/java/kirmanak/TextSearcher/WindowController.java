@@ -1,10 +1,12 @@
 package kirmanak.TextSearcher;
 
+import javafx.animation.PauseTransition;
 import javafx.concurrent.WorkerStateEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
@@ -15,6 +17,8 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
@@ -24,6 +28,9 @@ import java.util.Optional;
 @Getter
 @Setter
 public class WindowController {
+    private static final int MAX_MATCHES_PER_FILE = 1000;
+    private static final int MIN_TYPED_LENGTH = 3;
+    private static final Duration TYPING_PAUSE = Duration.millis(300);
     @FXML
     private TextField pathField;
     @FXML
@@ -33,26 +40,57 @@ public class WindowController {
     @FXML
     private TabPane tabPane;
     @FXML
+    private CheckBox streamingCheckBox;
+    @FXML
+    private CheckBox indexCheckBox;
+    @FXML
+    private CheckBox virtualThreadsCheckBox;
+    @FXML
+    private TextField excludeField;
+    @FXML
+    private TextField sizeField;
+    @FXML
+    private TextField ageField;
+    @FXML
+    private CheckBox binaryCheckBox;
+    @FXML
+    private CheckBox ignoreCaseCheckBox;
+    @FXML
+    private CheckBox wholeWordCheckBox;
+    @FXML
+    private CheckBox typingCheckBox;
+    @FXML
+    private ChoiceBox<QueryMode> queryModeChoiceBox;
+    @FXML
     private ProgressIndicator progressIndicator;
     @FXML
+    private Label statusLabel;
+    @FXML
     private TreeView<Path> treeView;
     @FXML
     private Stage primaryStage;
     private Path root = null;
+    private TreeStreamer treeStreamer = null;
+    private TextSearchService searchService = null;
+    private SearchRequest request = null;
+    private PauseTransition typingPause = null;
 
     /**
      * Shows content of the provided path
      *
      * @param newValue the new selected item
+     * @param matches  the locations of the text in the file
+     * @param searched the request which has found the file, a later search may have replaced the current one
      */
-    private void showContent(final Path newValue) {
-        final EntryMessage m = log.traceEntry("showContent(newValue = {})", newValue);
-        if (Files.isRegularFile(newValue)) {
-            final TextViewService service = new TextViewService(newValue, getTextField().getText());
+    private void showContent(final Path newValue, final FileMatches matches, final SearchRequest searched) {
+        final EntryMessage m = log.traceEntry("showContent(newValue = {}, matches = {})", newValue, matches);
+        if (Files.isRegularFile(newValue) || ArchiveScanner.archiveOf(newValue).isPresent()) {
+            final QueryMatcher matcher = new EncodedQuery(searched).matcher(matches.getEncoding());
+            final TextViewService service = new TextViewService(newValue, matcher, matches);
             service.setOnRunning(this::onTaskRunning);
             service.setOnFailed(this::onTaskFailed);
             service.setOnSucceeded(stateEvent -> {
-                addTab(service.getValue(), newValue);
+                addTab(new FileViewer(service.getValue(), matcher, matches), newValue, matches);
                 getProgressIndicator().setVisible(false);
             });
             service.start();
@@ -61,12 +99,16 @@ public class WindowController {
     }
 
     /**
-     * Calculates the path for the item based on the tree structure and calls showContent in case of success
+     * Calculates the path for the found file based on the tree structure and calls showContent in case of success
      *
      * @param item item to start
      */
     private void selectionListener(final TreeItem<Path> item) {
         final EntryMessage entryMessage = log.traceEntry("selectionListener(item = {})", item);
+        if (!(item instanceof MatchTreeItem)) {
+            log.traceExit(entryMessage);
+            return;
+        }
         getRoot().ifPresent(path -> {
             TreeItem<Path> current = item;
             Path result = item.getValue();
@@ -74,7 +116,7 @@ public class WindowController {
                 current = current.getParent();
                 result = current.getValue().resolve(result);
             }
-            showContent(result);
+            showContent(result, ((MatchTreeItem) item).getMatches(), ((MatchTreeItem) item).getRequest());
         });
         log.traceExit(entryMessage);
     }
@@ -82,16 +124,29 @@ public class WindowController {
     /**
      * Adds a tab to the TabPane
      *
-     * @param textArea the tab content
-     * @param path     the tab name
+     * @param viewer  the tab content
+     * @param path    the tab name
+     * @param matches the locations of the text in the file
      */
-    private void addTab(final TextArea textArea, final Path path) {
+    private void addTab(final FileViewer viewer, final Path path, final FileMatches matches) {
         final EntryMessage m = log.traceEntry(
-                "addTab(textArea = {}, path = {})", textArea, path
+                "addTab(viewer = {}, path = {}, matches = {})", viewer, path, matches
         );
-        getTabPane().getTabs().removeIf(tab -> tab.getText().equals(path.toString()));
-        getTabPane().getTabs().add(new Tab(path.toString(), textArea));
+        getTabPane().getTabs().removeIf(tab -> {
+            final boolean same = path.equals(tab.getUserData());
+            if (same) {
+                ((FileViewer) tab.getContent()).close();
+            }
+            return same;
+        });
+        final Tab tab = new Tab(String.format(
+                "%s (%d%s matches)", path, matches.getCount(), matches.isTruncated() ? "+" : ""
+        ), viewer);
+        tab.setUserData(path);
+        tab.setOnClosed(event -> viewer.close());
+        getTabPane().getTabs().add(tab);
         getTabPane().getSelectionModel().selectLast();
+        viewer.nextMatch();
         log.traceExit(m);
     }
 
@@ -101,27 +156,207 @@ public class WindowController {
     @FXML
     protected void onSearchRequest() {
         final EntryMessage entryMessage = log.traceEntry("onSearchRequest()");
-        getRoot().ifPresent(path -> {
-            final TextSearchService service = new TextSearchService(
-                    path, getExtensionField().getText(), getTextField().getText()
+        startSearch(false);
+        log.traceExit(entryMessage);
+    }
+
+    /**
+     * Cancels the running search as soon as the text is edited and starts a new one when the typing pauses
+     *
+     * @param text the edited text
+     */
+    private void onTextEdited(final String text) {
+        final EntryMessage entryMessage = log.traceEntry("onTextEdited(text = {})", text);
+        if (getTypingCheckBox().isSelected()) {
+            cancelSearch();
+            typingPause.playFromStart();
+        }
+        log.traceExit(entryMessage);
+    }
+
+    /**
+     * Starts the search of the typed text, a text extending the previous one is only looked for
+     * in the files containing the previous text. Shorter texts are not searched, they match too many files.
+     */
+    private void onTypingPaused() {
+        final EntryMessage entryMessage = log.traceEntry("onTypingPaused()");
+        if (getTypingCheckBox().isSelected() && getTextField().getText().length() >= MIN_TYPED_LENGTH) {
+            startSearch(true);
+        }
+        log.traceExit(entryMessage);
+    }
+
+    /**
+     * Cancels the previous search and starts a new one with the current parameters
+     *
+     * @param typed whether the search has been started by typing, it may skip the walk then
+     */
+    private void startSearch(final boolean typed) {
+        final EntryMessage entryMessage = log.traceEntry("startSearch(typed = {})", typed);
+        typingPause.stop();
+        getRoot().ifPresent(path -> createFilter().ifPresent(filter -> {
+            cancelSearch();
+            final boolean narrowing = typed && isSameFilter(path, filter);
+            if (getStreamingCheckBox().isSelected()) {
+                startStreamingSearch(createRequest(path, filter, narrowing));
+            } else {
+                final SearchRequest searched = createRequest(path, filter, narrowing);
+                final List<FileMatches> files = Collections.synchronizedList(new ArrayList<>());
+                final TextSearchService service = createSearchService(searched, files::add);
+                service.setOnFailed(this::onTaskFailed);
+                service.setOnSucceeded(event -> onSearchSucceeded(files, searched));
+                service.start();
+            }
+        }));
+        log.traceExit(entryMessage);
+    }
+
+    /**
+     * Tells whether the previous search has walked the same files, only then its results may be narrowed down
+     *
+     * @param path   the root folder of the new search
+     * @param filter the filter of the new search
+     * @return true if the root folder, the extension and the filter settings are the same
+     */
+    private boolean isSameFilter(final Path path, final PathFilter filter) {
+        return Objects.nonNull(request) && request.getRootFolder().equals(path)
+                && request.getExtension().equals(getExtensionField().getText())
+                && request.getFilter().toString().equals(filter.toString());
+    }
+
+    /**
+     * Builds the file filter from the filter fields.
+     * An extension field containing glob characters or commas is taken for a list of include globs.
+     *
+     * @return the filter or nothing if some field is invalid, the error has been shown then
+     */
+    private Optional<PathFilter> createFilter() {
+        final EntryMessage entryMessage = log.traceEntry("createFilter()");
+        final String extension = getExtensionField().getText();
+        final List<String> includes = extension.matches(".*[*?{\\[,].*")
+                ? splitGlobs(extension) : Collections.emptyList();
+        try {
+            final String[] size = getSizeField().getText().split("-", -1);
+            final String age = getAgeField().getText().trim();
+            final PathFilter filter = new PathFilter(
+                    includes, splitGlobs(getExcludeField().getText()),
+                    size[0].trim().isEmpty() ? 0 : PathFilter.parseSize(size[0]),
+                    size.length < 2 || size[1].trim().isEmpty() ? Long.MAX_VALUE : PathFilter.parseSize(size[1]),
+                    age.isEmpty() ? null : PathFilter.parseAge(age), !getBinaryCheckBox().isSelected()
             );
-            service.setOnRunning(this::onTaskRunning);
-            service.setOnFailed(this::onTaskFailed);
-            service.setOnSucceeded(event -> onSearchSucceeded(service.getValue()));
-            service.start();
+            return log.traceExit(entryMessage, Optional.of(filter));
+        } catch (final IllegalArgumentException err) {
+            log.error(entryMessage, err);
+            showError(err.getMessage());
+            return log.traceExit(entryMessage, Optional.empty());
+        }
+    }
+
+    /**
+     * Splits a comma separated list of globs
+     *
+     * @param text the list
+     * @return the non-empty globs
+     */
+    private static List<String> splitGlobs(final String text) {
+        final List<String> globs = new ArrayList<>();
+        for (final String glob : text.split(",")) {
+            if (!glob.trim().isEmpty()) {
+                globs.add(glob.trim());
+            }
+        }
+        return globs;
+    }
+
+    /**
+     * Starts the search which inserts found files into the tree while it is running
+     *
+     * @param searched the request to run
+     */
+    private void startStreamingSearch(final SearchRequest searched) {
+        final EntryMessage entryMessage = log.traceEntry("startStreamingSearch(searched = {})", searched);
+        final TreeStreamer streamer = new TreeStreamer(searched.getRootFolder(), searched);
+        treeStreamer = streamer;
+        getTreeView().setRoot(streamer.getBuilder().getTreeRoot());
+        final TextSearchService service = createSearchService(searched, streamer);
+        service.setOnFailed(event -> {
+            streamer.finish();
+            onTaskFailed(event);
         });
+        service.setOnSucceeded(event -> {
+            streamer.finish();
+            getProgressIndicator().setVisible(false);
+        });
+        streamer.start();
+        service.start();
+        log.traceExit(entryMessage);
+    }
+
+    /**
+     * Creates the request from the current search parameters, it becomes the last request of the window
+     *
+     * @param path      the root folder to start search
+     * @param filter    the filter of the files to scan
+     * @param narrowing whether only the files containing the text of a previous search are scanned
+     * @return the request
+     */
+    private SearchRequest createRequest(final Path path, final PathFilter filter, final boolean narrowing) {
+        final EntryMessage entryMessage = log.traceEntry(
+                "createRequest(path = {}, filter = {}, narrowing = {})", path, filter, narrowing
+        );
+        final QueryMode mode = getQueryModeChoiceBox().getValue();
+        final String text = getTextField().getText();
+        request = new SearchRequest(
+                path, getExtensionField().getText(), mode == QueryMode.ANY ? text.replace('|', '\n') : text,
+                mode, getIgnoreCaseCheckBox().isSelected(), getWholeWordCheckBox().isSelected(),
+                getIndexCheckBox().isSelected(), narrowing,
+                getVirtualThreadsCheckBox().isSelected() ? ScanMode.VIRTUAL_THREADS : ScanMode.POOL,
+                MAX_MATCHES_PER_FILE, filter
+        );
+        return log.traceExit(entryMessage, request);
+    }
+
+    /**
+     * Creates a TextSearchService running the request
+     *
+     * @param searched the request to run
+     * @param listener the listener of found files
+     * @return the configured service
+     */
+    private TextSearchService createSearchService(final SearchRequest searched, final SearchListener listener) {
+        final EntryMessage entryMessage = log.traceEntry(
+                "createSearchService(searched = {}, listener = {})", searched, listener
+        );
+        final TextSearchService service = new TextSearchService(searched, listener);
+        getStatusLabel().textProperty().bind(service.messageProperty());
+        service.setOnRunning(this::onTaskRunning);
+        service.setOnCancelled(event -> getProgressIndicator().setVisible(false));
+        searchService = service;
+        return log.traceExit(entryMessage, service);
+    }
+
+    /**
+     * Cancels the previous search and stops inserting its results
+     */
+    private void cancelSearch() {
+        final EntryMessage entryMessage = log.traceEntry("cancelSearch()");
+        Optional.ofNullable(searchService).ifPresent(TextSearchService::cancel);
+        searchService = null;
+        Optional.ofNullable(treeStreamer).ifPresent(TreeStreamer::cancel);
+        treeStreamer = null;
         log.traceExit(entryMessage);
     }
 
     /**
      * Generates a TreeView on successful search
      *
-     * @param paths the search result
+     * @param files    the search result
+     * @param searched the request which has found the files
      */
-    private void onSearchSucceeded(final List<Path> paths) {
-        final EntryMessage entryMessage = log.traceEntry("onSearchSucceeded(paths = {})", paths);
+    private void onSearchSucceeded(final List<FileMatches> files, final SearchRequest searched) {
+        final EntryMessage entryMessage = log.traceEntry("onSearchSucceeded(files = {})", files.size());
         getProgressIndicator().setVisible(false);
-        final TreeGeneratorService service = new TreeGeneratorService(paths, root);
+        final TreeGeneratorService service = new TreeGeneratorService(files, root, searched);
         service.setOnRunning(this::onTaskRunning);
         service.setOnFailed(this::onTaskFailed);
         service.setOnSucceeded(event -> {
@@ -210,6 +445,12 @@ public class WindowController {
     @FXML
     public void initialize() {
         final EntryMessage entryMessage = log.traceEntry("initialize()");
+        getTreeView().setCellFactory(view -> new ResultTreeCell());
+        getQueryModeChoiceBox().getItems().setAll(QueryMode.values());
+        getQueryModeChoiceBox().setValue(QueryMode.TEXT);
+        typingPause = new PauseTransition(TYPING_PAUSE);
+        typingPause.setOnFinished(event -> onTypingPaused());
+        getTextField().textProperty().addListener((observable, oldValue, newValue) -> onTextEdited(newValue));
         getTreeView().getSelectionModel().selectedItemProperty().addListener((observable, oldValue, newValue) ->
                 Optional.ofNullable(newValue).ifPresent(this::selectionListener)
         );
@@ -0,0 +1,131 @@
+package kirmanak.TextSearcher;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Places the matches at and around the borders of the buffers the {@link FileScanner} reads the files in
+ */
+class FileScannerTest {
+    private static final byte[] FILLER = ("x".repeat(63) + "\n").getBytes(StandardCharsets.US_ASCII);
+    private static final String SAMPLE = " needlebar needle\n";
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Lists the queries whose matches depend on the bytes around them
+     *
+     * @return the mode, the text, the case and the word flags
+     */
+    static Stream<Arguments> queries() {
+        return Stream.of(
+                Arguments.of(QueryMode.TEXT, "needle", false, false),
+                Arguments.of(QueryMode.TEXT, "NEEDLE", true, false),
+                Arguments.of(QueryMode.TEXT, "needle", false, true),
+                Arguments.of(QueryMode.ANY, "needle\nneedlebar", false, true),
+                Arguments.of(QueryMode.REGEX, "needle$", false, false),
+                Arguments.of(QueryMode.REGEX, "needle\\b", false, false),
+                Arguments.of(QueryMode.REGEX, "e+dleb", false, false)
+        );
+    }
+
+    /**
+     * Checks the border of the buffer sliding over the streamed data
+     */
+    @ParameterizedTest
+    @MethodSource("queries")
+    void findsAroundStreamBuffer(final QueryMode mode, final String text, final boolean ignoreCase,
+                                 final boolean wholeWord) throws IOException {
+        final FileScanner scanner = new FileScanner(new EncodedQuery(mode, text, ignoreCase, wholeWord), () -> false,
+                false);
+        for (int shift = -2; shift <= 2; shift++) {
+            final Path path = write(FileScanner.DIRECT_BUFFER_SIZE + shift);
+            final FileMatches matches;
+            try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                matches = scanner.find(path, channel, () -> FileChannel.open(path, StandardOpenOption.READ),
+                        Integer.MAX_VALUE);
+            }
+            assertEquals(expected(path, mode, text, ignoreCase, wholeWord), offsets(matches), "shift " + shift);
+        }
+    }
+
+    /**
+     * Checks the border of the steps a mapped file is searched in
+     */
+    @ParameterizedTest
+    @MethodSource("queries")
+    void findsAroundMappedStep(final QueryMode mode, final String text, final boolean ignoreCase,
+                               final boolean wholeWord) throws IOException {
+        final EncodedQuery query = new EncodedQuery(mode, text, ignoreCase, wholeWord);
+        final FileScanner scanner = new FileScanner(query, () -> false, false);
+        final int stepEnd = FileScanner.STEP_SIZE + query.matcher(TextEncoding.UTF_8).maxLength() - 1;
+        for (int shift = -1; shift <= 1; shift++) {
+            final Path path = write(stepEnd + shift);
+            assertEquals(expected(path, mode, text, ignoreCase, wholeWord),
+                    offsets(scanner.find(path, Integer.MAX_VALUE)), "shift " + shift);
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Writes lines of filler with the sample whose first "needle" ends at the provided offset
+     *
+     * @param end the offset right after the first "needle"
+     * @return the written file
+     * @throws IOException if the file could not be written
+     */
+    private Path write(final int end) throws IOException {
+        final byte[] content = new byte[end + 64 * 1024];
+        for (int i = 0; i < content.length; i += FILLER.length) {
+            System.arraycopy(FILLER, 0, content, i, Math.min(FILLER.length, content.length - i));
+        }
+        final byte[] sample = SAMPLE.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(sample, 0, content, end - " needle".length(), sample.length);
+        return Files.write(folder.resolve(end + ".log"), content);
+    }
+
+    /**
+     * Finds the query in the whole decoded file with java.util.regex
+     *
+     * @param path       the file to search in
+     * @param mode       how the text is interpreted
+     * @param text       the search text
+     * @param ignoreCase whether the case variants of the text match as well
+     * @param wholeWord  whether the matches must not be parts of longer words
+     * @return the byte offsets of the matches
+     * @throws IOException if the file could not be read
+     */
+    private static List<Long> expected(final Path path, final QueryMode mode, final String text,
+                                       final boolean ignoreCase, final boolean wholeWord) throws IOException {
+        final String content = new String(Files.readAllBytes(path), StandardCharsets.US_ASCII);
+        return QueryMatcherTest.expected(mode, text, ignoreCase, wholeWord, content, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Lists the offsets of the found matches
+     *
+     * @param matches the matches found by the scanner
+     * @return the byte offsets of the matches
+     */
+    private static List<Long> offsets(final FileMatches matches) {
+        return LongStream.of(Arrays.copyOf(matches.getOffsets(), matches.getCount())).boxed()
+                .collect(Collectors.toList());
+    }
+}
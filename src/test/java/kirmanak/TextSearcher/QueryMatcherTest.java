@@ -0,0 +1,151 @@
+package kirmanak.TextSearcher;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the matchers built by {@link QueryMatcher#of} with java.util.regex on the decoded text
+ */
+class QueryMatcherTest {
+    private static final String TEXT = String.join("\n",
+            "needle at the start",
+            "a Needle, NEEDLE and needles",
+            "haystack_needle needle_haystack (needle)",
+            "café needle über NADEL Über",
+            "needleneedle",
+            "the end needle"
+    );
+
+    /**
+     * Lists the queries to check
+     *
+     * @return the mode, the text, the case and the word flags
+     */
+    static Stream<Arguments> queries() {
+        return Stream.of(
+                Arguments.of(QueryMode.TEXT, "needle", false, false),
+                Arguments.of(QueryMode.TEXT, "needle", true, false),
+                Arguments.of(QueryMode.TEXT, "needle", false, true),
+                Arguments.of(QueryMode.TEXT, "needle", true, true),
+                Arguments.of(QueryMode.TEXT, "ÜBER", true, false),
+                Arguments.of(QueryMode.TEXT, "é needle", false, false),
+                Arguments.of(QueryMode.ANY, "needle\nnadel", false, false),
+                Arguments.of(QueryMode.ANY, "needle\nnadel", true, true),
+                Arguments.of(QueryMode.REGEX, "need\\w+", false, false),
+                Arguments.of(QueryMode.REGEX, "^needle", false, false),
+                Arguments.of(QueryMode.REGEX, "needle$", false, false),
+                Arguments.of(QueryMode.REGEX, "\\(needle\\)|n[a-e]+dle", true, false),
+                Arguments.of(QueryMode.REGEX, "needle", false, true)
+        );
+    }
+
+    /**
+     * Lists every query for every encoding
+     *
+     * @return the encoding followed by the query arguments
+     */
+    static Stream<Arguments> encodedQueries() {
+        return Arrays.stream(TextEncoding.values()).flatMap(encoding -> queries().map(query -> {
+            final List<Object> arguments = new ArrayList<>(Arrays.asList(query.get()));
+            arguments.add(0, encoding);
+            return Arguments.of(arguments.toArray());
+        }));
+    }
+
+    /**
+     * Checks every match of the query in the whole text
+     */
+    @ParameterizedTest
+    @MethodSource("encodedQueries")
+    void findsWhatPatternFinds(final TextEncoding encoding, final QueryMode mode, final String text,
+                               final boolean ignoreCase, final boolean wholeWord) {
+        final QueryMatcher matcher = QueryMatcher.of(mode, text, encoding, ignoreCase, wholeWord);
+        final ByteBuffer buffer = ByteBuffer.wrap(TEXT.getBytes(encoding.getCharset()));
+        assertEquals(expected(mode, text, ignoreCase, wholeWord, TEXT, encoding.getCharset()),
+                found(matcher, buffer, 0, buffer.limit()));
+    }
+
+    /**
+     * Checks that nothing is found before the first or after the last searched index
+     */
+    @ParameterizedTest
+    @MethodSource("queries")
+    void findsOnlyBetweenTheBorders(final QueryMode mode, final String text, final boolean ignoreCase,
+                                    final boolean wholeWord) {
+        final Charset charset = TextEncoding.UTF_8.getCharset();
+        final QueryMatcher matcher = QueryMatcher.of(mode, text, TextEncoding.UTF_8, ignoreCase, wholeWord);
+        final ByteBuffer buffer = ByteBuffer.wrap(TEXT.getBytes(charset));
+        final List<Long> all = expected(mode, text, ignoreCase, wholeWord, TEXT, charset);
+        // the borders are line ends, so the matches between them are the same as in the whole text
+        final int from = TEXT.substring(0, TEXT.indexOf('\n') + 1).getBytes(charset).length;
+        final int to = TEXT.substring(0, TEXT.lastIndexOf('\n')).getBytes(charset).length;
+        final List<Long> inside = all.stream()
+                .filter(offset -> offset >= from && offset < to)
+                .collect(Collectors.toList());
+        assertEquals(inside, found(matcher, buffer, from, to));
+    }
+
+    /**
+     * Collects the matches the way {@link FileScanner} does, the next search starts after the previous match
+     *
+     * @param matcher the matcher to check
+     * @param buffer  the encoded text
+     * @param from    the first index to search from
+     * @param to      the index the matches must end before
+     * @return the start offsets of the matches
+     */
+    static List<Long> found(final QueryMatcher matcher, final ByteBuffer buffer, final int from, final int to) {
+        final List<Long> result = new ArrayList<>();
+        int start = from;
+        while (start < to) {
+            final long match = matcher.find(buffer, start, to);
+            if (match < 0) {
+                break;
+            }
+            result.add((long) QueryMatcher.start(match));
+            start = Math.max(QueryMatcher.end(match), QueryMatcher.start(match) + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the query in the decoded text with java.util.regex
+     *
+     * @param mode       how the text is interpreted
+     * @param query      the search text
+     * @param ignoreCase whether the case variants of the text match as well
+     * @param wholeWord  whether the matches must not be parts of longer words
+     * @param text       the text to search in
+     * @param charset    the charset the offsets are counted in
+     * @return the byte offsets of the matches
+     */
+    static List<Long> expected(final QueryMode mode, final String query, final boolean ignoreCase,
+                               final boolean wholeWord, final String text, final Charset charset) {
+        String regex = mode == QueryMode.REGEX ? query : Arrays.stream(query.split("\n"))
+                .map(Pattern::quote)
+                .collect(Collectors.joining("|"));
+        if (wholeWord) {
+            regex = "(?<![\\p{L}\\p{Nd}_])(?:" + regex + ")(?![\\p{L}\\p{Nd}_])";
+        }
+        final int flags = Pattern.MULTILINE | (ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0);
+        final Matcher matcher = Pattern.compile(regex, flags).matcher(text);
+        final List<Long> result = new ArrayList<>();
+        while (matcher.find()) {
+            result.add((long) text.substring(0, matcher.start()).getBytes(charset).length);
+        }
+        return result;
+    }
+}
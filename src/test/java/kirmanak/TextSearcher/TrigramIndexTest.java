@@ -0,0 +1,122 @@
+package kirmanak.TextSearcher;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Builds, updates and reopens the index of a temporary folder
+ */
+class TrigramIndexTest {
+    private static final String EXTENSION = "log";
+
+    @TempDir
+    Path root;
+
+    /**
+     * Removes the index file written next to the other indexes of the user
+     *
+     * @throws IOException if the index could not be deleted
+     */
+    @AfterEach
+    void deleteIndex() throws IOException {
+        Files.deleteIfExists(TrigramIndex.indexFile(root, EXTENSION));
+    }
+
+    /**
+     * Checks that the candidates are exactly the indexed files containing the pattern
+     */
+    @Test
+    void findsTheFilesContainingThePattern() throws IOException {
+        final Path first = write("first.log", "the quick brown fox");
+        final Path second = write("second.log", "jumps over the lazy dog");
+        final Path third = write("nested/third.log", "a quick dog");
+        write("other.txt", "quick");
+        final TrigramIndex index = new TrigramIndexBuilder(root, EXTENSION).build();
+        assertEquals(set(first, third), candidates(index, "quick"));
+        assertEquals(set(second, third), candidates(index, "dog"));
+        assertEquals(set(first, second), candidates(index, "the"));
+        assertEquals(set(), candidates(index, "zebra"));
+        assertEquals(set(), candidates(index, "quick fox"));
+        assertFalse(index.candidates(bytes("do")).isPresent());
+    }
+
+    /**
+     * Checks that the changed files are re-read and the result is the same after reopening the index
+     */
+    @Test
+    void updatesAndReopens() throws IOException {
+        final Path first = write("first.log", "the quick brown fox");
+        final Path second = write("second.log", "jumps over the lazy dog");
+        final TrigramIndexBuilder builder = new TrigramIndexBuilder(root, EXTENSION);
+        final TrigramIndex built = builder.build();
+        write("second.log", "the quickest dog");
+        Files.delete(first);
+        final Path third = write("third.log", "quick");
+        final TrigramIndex updated = builder.update(built, set(first, second, third));
+        assertEquals(set(second, third), candidates(updated, "quick"));
+        assertEquals(set(), candidates(updated, "fox"));
+        final TrigramIndex reopened = TrigramIndex.open(root, EXTENSION).orElseThrow(AssertionError::new);
+        assertEquals(set(second, third), candidates(reopened, "quick"));
+        assertEquals(set(second), candidates(reopened, "dog"));
+        assertTrue(candidates(builder.update(reopened), "brown").isEmpty());
+    }
+
+    /**
+     * Writes the file creating its folders
+     *
+     * @param name    the path relative to the root folder
+     * @param content the text of the file
+     * @return the written file
+     * @throws IOException if the file could not be written
+     */
+    private Path write(final String name, final String content) throws IOException {
+        final Path path = root.resolve(name);
+        Files.createDirectories(path.getParent());
+        return Files.write(path, bytes(content));
+    }
+
+    /**
+     * Lists the candidate files of the pattern
+     *
+     * @param index   the index to ask
+     * @param pattern the searched text
+     * @return the candidate files
+     */
+    private static Set<Path> candidates(final TrigramIndex index, final String pattern) {
+        return new HashSet<>(index.candidatePaths(Collections.singletonList(bytes(pattern))));
+    }
+
+    /**
+     * Encodes the text as the index does
+     *
+     * @param text the text
+     * @return the UTF-8 bytes of the text
+     */
+    private static byte[] bytes(final String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Collects the paths
+     *
+     * @param paths the paths
+     * @return the modifiable set of the paths
+     */
+    private static Set<Path> set(final Path... paths) {
+        return new HashSet<>(Arrays.asList(paths));
+    }
+}